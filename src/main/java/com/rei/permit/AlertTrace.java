@@ -0,0 +1,139 @@
+package com.rei.permit;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timestamps of one alert on its way from the availability fetch that observed it to
+ * the SMS provider accepting the message. A trace is started for every poll of a permit
+ * and forked for each alert the poll raises; only delivered alerts are recorded.
+ */
+public class AlertTrace {
+    /**
+     * Points an alert passes through, in order.
+     */
+    public enum Stage {
+        FETCH_START,
+        FETCH_END,
+        PARSED,
+        EVALUATED,
+        DEDUPED,
+        ENQUEUED,
+        DELIVERED
+    }
+
+    private final AlertTracer tracer;
+    private final String permitId;
+    private final String date;
+    private final long[] nanos;
+    private volatile String messageSid;
+
+    AlertTrace(AlertTracer tracer, String permitId) {
+        this(tracer, permitId, null, new long[Stage.values().length]);
+    }
+
+    private AlertTrace(AlertTracer tracer, String permitId, String date, long[] nanos) {
+        this.tracer = tracer;
+        this.permitId = permitId;
+        this.date = date;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Marks a stage as reached now.
+     */
+    public void mark(Stage stage) {
+        mark(stage, System.nanoTime());
+    }
+
+    /**
+     * Marks a stage as reached at the given {@link System#nanoTime()} value.
+     */
+    public void mark(Stage stage, long nanoTime) {
+        nanos[stage.ordinal()] = nanoTime;
+    }
+
+    /**
+     * Starts the trace of one alert raised by this poll.
+     *
+     * @param alertDate Date the alert is about
+     * @return A trace sharing the stages reached so far
+     */
+    public AlertTrace forAlert(String alertDate) {
+        return new AlertTrace(tracer, permitId, alertDate, Arrays.copyOf(nanos, nanos.length));
+    }
+
+    /**
+     * Marks the alert as accepted by the provider and records the trace.
+     *
+     * @param providerMessageId The provider's ID of the message, such as a Twilio message SID
+     */
+    public void complete(String providerMessageId) {
+        mark(Stage.DELIVERED);
+        this.messageSid = providerMessageId;
+        tracer.record(this);
+    }
+
+    public String getPermitId() {
+        return permitId;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getMessageSid() {
+        return messageSid;
+    }
+
+    /**
+     * Returns the time spent reaching a stage from the previous stage that was reached.
+     *
+     * @param stage The stage
+     * @return Nanoseconds, or -1 if the stage or no earlier stage was reached
+     */
+    public long getStageNanos(Stage stage) {
+        long at = nanos[stage.ordinal()];
+        if (at == 0) {
+            return -1;
+        }
+        for (int i = stage.ordinal() - 1; i >= 0; i--) {
+            if (nanos[i] != 0) {
+                return at - nanos[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Time from the fetch start to delivery, or -1 if either is missing.
+     */
+    public long getTotalNanos() {
+        long start = nanos[Stage.FETCH_START.ordinal()];
+        long end = nanos[Stage.DELIVERED.ordinal()];
+        return start == 0 || end == 0 ? -1 : end - start;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("permit ").append(permitId);
+        if (date != null) {
+            text.append(' ').append(date);
+        }
+        text.append(" in ").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos())).append(" ms [");
+        String separator = "";
+        for (Stage stage : Stage.values()) {
+            long stageNanos = getStageNanos(stage);
+            if (stageNanos >= 0) {
+                text.append(separator).append(stage.name().toLowerCase()).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(stageNanos)).append(" ms");
+                separator = ", ";
+            }
+        }
+        text.append(']');
+        if (messageSid != null) {
+            text.append(" sid ").append(messageSid);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects delivered {@link AlertTrace}s into per-stage latency histograms and keeps the
+ * slowest alerts, so it is visible where the time between observing a slot and the
+ * provider accepting the SMS goes. Only alerts slower than the slow threshold are logged at
+ * info level; the rest are logged at debug level.
+ */
+public class AlertTracer {
+    private static final Logger logger = LoggerFactory.getLogger(AlertTracer.class);
+    private static final int SAMPLES = 1024;
+
+    private final int slowestCount;
+    private final long slowThresholdNanos;
+    private final Map<AlertTrace.Stage, LatencyTracker> stageLatencies = new EnumMap<>(AlertTrace.Stage.class);
+    private final LatencyTracker totalLatency = new LatencyTracker(SAMPLES);
+    private final PriorityQueue<AlertTrace> slowest =
+        new PriorityQueue<>(Comparator.comparingLong(AlertTrace::getTotalNanos));
+
+    /**
+     * Creates a new tracer.
+     *
+     * @param slowestCount Number of slowest alerts kept
+     * @param slowThreshold Fetch-to-delivery latency above which an alert is logged as slow
+     */
+    public AlertTracer(int slowestCount, Duration slowThreshold) {
+        this.slowestCount = slowestCount;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        for (AlertTrace.Stage stage : AlertTrace.Stage.values()) {
+            stageLatencies.put(stage, new LatencyTracker(SAMPLES));
+        }
+    }
+
+    /**
+     * Starts the trace of one poll of a permit.
+     *
+     * @param permitId The permit being polled
+     * @return The new trace
+     */
+    public AlertTrace start(String permitId) {
+        return new AlertTrace(this, permitId);
+    }
+
+    void record(AlertTrace trace) {
+        for (AlertTrace.Stage stage : AlertTrace.Stage.values()) {
+            long nanos = trace.getStageNanos(stage);
+            if (nanos >= 0) {
+                stageLatencies.get(stage).record(TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+        }
+        if (trace.getTotalNanos() < 0) {
+            return;
+        }
+        totalLatency.record(TimeUnit.NANOSECONDS.toMillis(trace.getTotalNanos()));
+        synchronized (slowest) {
+            slowest.add(trace);
+            if (slowest.size() > slowestCount) {
+                slowest.poll();
+            }
+        }
+        if (trace.getTotalNanos() > slowThresholdNanos) {
+            logger.info("Slow alert: {}", trace);
+        } else {
+            logger.debug("Alert delivered: {}", trace);
+        }
+    }
+
+    /**
+     * Returns the latency histogram of a stage, in milliseconds since the previous stage.
+     */
+    public LatencyTracker getStageLatency(AlertTrace.Stage stage) {
+        return stageLatencies.get(stage);
+    }
+
+    /**
+     * Returns the histogram of fetch-to-delivery latency in milliseconds.
+     */
+    public LatencyTracker getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Returns the slowest alerts recorded, slowest first.
+     */
+    public List<AlertTrace> getSlowest() {
+        List<AlertTrace> traces;
+        synchronized (slowest) {
+            traces = new ArrayList<>(slowest);
+        }
+        traces.sort(Comparator.comparingLong(AlertTrace::getTotalNanos).reversed());
+        return traces;
+    }
+
+    /**
+     * Logs the per-stage latency percentiles at debug level.
+     */
+    public void logSummary() {
+        if (!logger.isDebugEnabled() || totalLatency.getSampleCount() == 0) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        for (AlertTrace.Stage stage : AlertTrace.Stage.values()) {
+            LatencyTracker latencies = stageLatencies.get(stage);
+            if (latencies.getSampleCount() > 0) {
+                summary.append(String.format(" %s p50=%d p95=%d p99=%d;", stage.name().toLowerCase(),
+                    latencies.percentile(50), latencies.percentile(95), latencies.percentile(99)));
+            }
+        }
+        logger.debug("Alert latency ms over {} alerts: total p50={} p95={} p99={};{}",
+            totalLatency.getSampleCount(), totalLatency.percentile(50), totalLatency.percentile(95),
+            totalLatency.percentile(99), summary);
+    }
+}
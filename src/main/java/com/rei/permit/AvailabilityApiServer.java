@@ -0,0 +1,284 @@
+package com.rei.permit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded HTTP API that serves the latest snapshot of an {@link AvailabilityBoard}:
+ * <ul>
+ *   <li>{@code GET /permits} - every watched permit</li>
+ *   <li>{@code GET /permits/<id>} - the watches on one permit ID</li>
+ *   <li>{@code GET /events?permits=<id>,<id>} - a Server-Sent Events stream of availability
+ *       changes, optionally filtered by permit ID; reconnecting with {@code Last-Event-ID}
+ *       replays the events missed in between, or sends a {@code reset} event followed by
+ *       everything currently open when the ID cannot be resumed from</li>
+ * </ul>
+ * Responses carry a version as their ETag - the snapshot's for every permit, the permit's
+ * own for a single one - so a reader that sends it back in {@code If-None-Match} gets a
+ * bodiless 304 until that availability changes.
+ */
+public class AvailabilityApiServer {
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityApiServer.class);
+    private static final String PERMITS_PATH = "/permits";
+    private static final String EVENTS_PATH = "/events";
+    private static final long HEARTBEAT_MS = 15000;
+    private static final byte[] NOT_FOUND = "{\"error\":\"Unknown permit\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TOO_MANY_SUBSCRIBERS =
+        "{\"error\":\"Too many event subscribers\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEARTBEAT = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESET = "event: reset\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final AvailabilityBoard board;
+    private final AvailabilityEventStream events;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new server. Nothing is served until {@link #start()} is called.
+     *
+     * @param board The board to serve
+     * @param address Address to listen on; port 0 picks a free port
+     * @param threads Number of threads handling requests
+     * @throws IOException if the address cannot be bound
+     */
+    public AvailabilityApiServer(AvailabilityBoard board, InetSocketAddress address, int threads) throws IOException {
+        this(board, null, address, threads);
+    }
+
+    /**
+     * Creates a new server that also streams availability changes. Every subscriber holds
+     * a thread of its own, on top of the threads answering queries.
+     *
+     * @param board The board to serve
+     * @param events The change stream to serve, or null to disable {@code /events}
+     * @param address Address to listen on; port 0 picks a free port
+     * @param threads Number of threads handling queries
+     * @throws IOException if the address cannot be bound
+     */
+    public AvailabilityApiServer(AvailabilityBoard board, AvailabilityEventStream events,
+                                 InetSocketAddress address, int threads) throws IOException {
+        this.board = board;
+        this.events = events;
+        this.server = HttpServer.create(address, 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        int poolSize = events == null ? threads : threads + events.getMaxSubscribers();
+        this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "availability-api-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PERMITS_PATH, this::handlePermits);
+        if (events != null) {
+            board.addListener(events);
+            server.createContext(EVENTS_PATH, this::handleEvents);
+        }
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Availability API listening on port {}", getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePermits(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            AvailabilityBoard.Snapshot snapshot = board.getSnapshot();
+            String path = exchange.getRequestURI().getPath();
+            byte[] body;
+            long version;
+            if (path.equals(PERMITS_PATH) || path.equals(PERMITS_PATH + "/")) {
+                body = snapshot.toJson();
+                version = snapshot.getVersion();
+            } else if (path.startsWith(PERMITS_PATH + "/")) {
+                String permitId = path.substring(PERMITS_PATH.length() + 1);
+                body = snapshot.toJson(permitId);
+                version = snapshot.getVersion(permitId);
+            } else {
+                version = -1;
+                body = null;
+            }
+            if (body == null) {
+                send(exchange, 404, NOT_FOUND);
+                return;
+            }
+
+            String etag = "\"" + version + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (noneMatch(exchange.getRequestHeaders().get("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            send(exchange, 200, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleEvents(HttpExchange exchange) throws IOException {
+        AvailabilityEventStream.Subscriber subscriber = null;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            Set<String> permitIds = new HashSet<>();
+            for (String id : query.getOrDefault("permits", "").split(",")) {
+                if (!id.trim().isEmpty()) {
+                    permitIds.add(id.trim());
+                }
+            }
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (lastEventId == null) {
+                lastEventId = query.get("lastEventId");
+            }
+            subscriber = events.subscribe(permitIds, lastEventId);
+            if (subscriber == null) {
+                send(exchange, 503, TOO_MANY_SUBSCRIBERS);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            if (subscriber.isResync()) {
+                out.write(RESET);
+            }
+            for (AvailabilityEvent event : subscriber.getMissedEvents()) {
+                writeEvent(out, event);
+            }
+            out.flush();
+            while (true) {
+                AvailabilityEvent event = subscriber.poll(HEARTBEAT_MS);
+                if (event != null) {
+                    writeEvent(out, event);
+                } else if (subscriber.isOverflowed()) {
+                    // Fell behind; the client reconnects with Last-Event-ID and catches up from history
+                    break;
+                } else {
+                    out.write(HEARTBEAT);
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.debug("Event subscriber disconnected: {}", e.getMessage());
+        } finally {
+            if (subscriber != null) {
+                subscriber.close();
+            }
+            exchange.close();
+        }
+    }
+
+    private static void writeEvent(OutputStream out, AvailabilityEvent event) throws IOException {
+        String frame = "id: " + event.getId() + "\n"
+            + "event: " + event.getType().wireName() + "\n"
+            + "data: " + event.toJson() + "\n\n";
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether an If-None-Match header matches an entity tag (RFC 9110, section 13.1.2): the
+     * header is {@code *} or a comma-separated list of entity tags, compared weakly, so a
+     * {@code W/} prefix is ignored.
+     *
+     * @param headers Every If-None-Match header of the request, or null if there were none
+     * @param etag The current entity tag, quoted
+     * @return True if the cached representation is still current
+     */
+    static boolean noneMatch(List<String> headers, String etag) {
+        if (headers == null) {
+            return false;
+        }
+        for (String header : headers) {
+            int i = 0;
+            while (i < header.length()) {
+                char c = header.charAt(i);
+                if (c == ',' || c == ' ' || c == '\t') {
+                    i++;
+                } else if (c == '*') {
+                    return true;
+                } else {
+                    int start = header.startsWith("W/", i) ? i + 2 : i;
+                    if (start >= header.length() || header.charAt(start) != '"') {
+                        // Not an entity tag; skip to the next list member
+                        int comma = header.indexOf(',', i);
+                        i = comma < 0 ? header.length() : comma + 1;
+                        continue;
+                    }
+                    int end = header.indexOf('"', start + 1);
+                    if (end < 0) {
+                        break;
+                    }
+                    if (header.substring(start, end + 1).equals(etag)) {
+                        return true;
+                    }
+                    i = end + 1;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
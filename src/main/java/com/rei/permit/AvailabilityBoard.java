@@ -0,0 +1,260 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The latest availability seen for every watched permit, published as an immutable
+ * snapshot that is swapped atomically whenever a poll changes it. Readers only ever
+ * dereference the current snapshot, so they never block the poller or each other, and
+ * the JSON served for a snapshot is serialized once and reused until the next change.
+ * Writers are serialized, so listeners see the changes in snapshot version order.
+ */
+public class AvailabilityBoard {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicReference<Snapshot> current =
+        new AtomicReference<>(new Snapshot(0, Collections.emptyMap(), Collections.emptyMap()));
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Receives every change of a permit's status right after it is published.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on the polling thread, one change at a time in the order the changes were
+         * published; implementations must not block, as they hold up every other writer.
+         *
+         * @param previous The earlier status, or null if the permit had none
+         * @param current The new status, or null if the permit is no longer watched
+         */
+        void onChange(PermitStatus previous, PermitStatus current);
+    }
+
+    public void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Records the open itineraries found for a permit in the latest poll. A new snapshot
+     * is only published if they differ from what was recorded before.
+     *
+     * @param permit The permit that was checked
+     * @param available The itineraries currently open, in the order they were found
+     * @return The previous status of the permit, or null if it had none
+     */
+    public synchronized PermitStatus record(Permit permit, List<PermitAvailability> available) {
+        // Publishing and notifying under one lock keeps listeners in version order;
+        // a lock-free swap would let a later version reach them first
+        Snapshot snapshot = current.get();
+        PermitStatus previous = snapshot.statuses.get(permit);
+        if (previous != null && previous.getAvailable().equals(available)) {
+            return previous;
+        }
+        Map<Permit, PermitStatus> statuses = new LinkedHashMap<>(snapshot.statuses);
+        PermitStatus status = new PermitStatus(permit, available, Instant.now());
+        statuses.put(permit, status);
+        Map<String, Long> versions = new HashMap<>(snapshot.versionById);
+        versions.put(permit.getId(), snapshot.version + 1);
+        current.set(new Snapshot(snapshot.version + 1, statuses, versions));
+        for (ChangeListener listener : listeners) {
+            listener.onChange(previous, status);
+        }
+        return previous;
+    }
+
+    /**
+     * Drops permits that are no longer watched. Listeners see each dropped permit change
+     * to a null status, so whatever it still had open is reported closed.
+     *
+     * @param watched The permits still watched
+     */
+    public synchronized void retain(Collection<Permit> watched) {
+        Snapshot snapshot = current.get();
+        Map<Permit, PermitStatus> statuses = new LinkedHashMap<>(snapshot.statuses);
+        Map<String, Long> versions = new HashMap<>(snapshot.versionById);
+        List<PermitStatus> dropped = new ArrayList<>();
+        for (PermitStatus status : snapshot.statuses.values()) {
+            if (!watched.contains(status.permit)) {
+                dropped.add(statuses.remove(status.permit));
+                versions.put(status.permit.getId(), snapshot.version + 1);
+            }
+        }
+        if (dropped.isEmpty()) {
+            return;
+        }
+        versions.keySet().retainAll(idsOf(statuses.keySet()));
+        current.set(new Snapshot(snapshot.version + 1, statuses, versions));
+        for (PermitStatus status : dropped) {
+            for (ChangeListener listener : listeners) {
+                listener.onChange(status, null);
+            }
+        }
+    }
+
+    private static Set<String> idsOf(Collection<Permit> permits) {
+        Set<String> ids = new HashSet<>();
+        for (Permit permit : permits) {
+            ids.add(permit.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the current snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * The availability of one permit as of its last change.
+     */
+    public static class PermitStatus {
+        private final Permit permit;
+        private final List<PermitAvailability> available;
+        private final Instant changedAt;
+
+        PermitStatus(Permit permit, List<PermitAvailability> available, Instant changedAt) {
+            this.permit = permit;
+            this.available = Collections.unmodifiableList(new ArrayList<>(available));
+            this.changedAt = changedAt;
+        }
+
+        public Permit getPermit() {
+            return permit;
+        }
+
+        public List<PermitAvailability> getAvailable() {
+            return available;
+        }
+
+        public Instant getChangedAt() {
+            return changedAt;
+        }
+    }
+
+    /**
+     * An immutable view of every permit's status. Serialized forms are built on first
+     * use and cached; racing readers may both build one, which is harmless.
+     */
+    public static class Snapshot {
+        private final long version;
+        private final Map<Permit, PermitStatus> statuses;
+        private final Map<String, Long> versionById;
+        private final Map<String, byte[]> jsonById = new ConcurrentHashMap<>();
+        private volatile byte[] json;
+
+        Snapshot(long version, Map<Permit, PermitStatus> statuses, Map<String, Long> versionById) {
+            this.version = version;
+            this.statuses = Collections.unmodifiableMap(statuses);
+            this.versionById = Collections.unmodifiableMap(versionById);
+        }
+
+        /**
+         * Version number, incremented on every change.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Version of the snapshot that last changed the watches on one permit ID, so it only
+         * moves when that permit's statuses do.
+         *
+         * @param permitId The permit ID
+         * @return The version, or -1 if the permit is not on the board
+         */
+        public long getVersion(String permitId) {
+            return versionById.getOrDefault(permitId, -1L);
+        }
+
+        public Collection<PermitStatus> getStatuses() {
+            return statuses.values();
+        }
+
+        /**
+         * Returns the whole snapshot as JSON.
+         */
+        public byte[] toJson() {
+            byte[] bytes = json;
+            if (bytes == null) {
+                bytes = serialize(null);
+                json = bytes;
+            }
+            return bytes;
+        }
+
+        /**
+         * Returns the statuses of the watches on one permit ID as JSON, carrying the
+         * permit's own version rather than the snapshot's.
+         *
+         * @param permitId The permit ID
+         * @return The JSON, or null if the permit is not on the board
+         */
+        public byte[] toJson(String permitId) {
+            byte[] bytes = jsonById.get(permitId);
+            if (bytes == null) {
+                bytes = serialize(permitId);
+                if (bytes == null) {
+                    return null;
+                }
+                jsonById.put(permitId, bytes);
+            }
+            return bytes;
+        }
+
+        private byte[] serialize(String permitId) {
+            ObjectNode root = objectMapper.createObjectNode();
+            root.put("version", permitId == null ? version : getVersion(permitId));
+            ArrayNode permits = root.putArray("permits");
+            for (PermitStatus status : statuses.values()) {
+                if (permitId == null || permitId.equals(status.permit.getId())) {
+                    permits.add(toNode(status));
+                }
+            }
+            if (permitId != null && permits.isEmpty()) {
+                return null;
+            }
+            try {
+                return objectMapper.writeValueAsBytes(root);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize availability snapshot", e);
+            }
+        }
+
+        private static ObjectNode toNode(PermitStatus status) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("id", status.permit.getId());
+            node.put("name", status.permit.getName());
+            node.put("changedAt", status.changedAt.toString());
+            ArrayNode available = node.putArray("available");
+            for (PermitAvailability availability : status.available) {
+                ObjectNode entry = available.addObject();
+                entry.put("date", availability.getAvailableDate());
+                entry.put("nights", availability.getNights());
+                entry.put("remaining", availability.getRemainingPermits());
+                if (availability.hasDivision()) {
+                    entry.put("division", availability.getDivision());
+                }
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A change in the availability of one itinerary of a permit between two polls.
+ */
+public class AvailabilityEvent {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public enum Type {
+        /** The itinerary became available. */
+        OPENED,
+        /** The itinerary is no longer available. */
+        CLOSED,
+        /** The itinerary is still available with a different number of permits remaining. */
+        CHANGED;
+
+        public String wireName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String id;
+    private final long sequence;
+    private final Type type;
+    private final Permit permit;
+    private final PermitAvailability availability;
+    private final int previousRemaining;
+
+    AvailabilityEvent(String id, long sequence, Type type, Permit permit, PermitAvailability availability,
+                      int previousRemaining) {
+        this.id = id;
+        this.sequence = sequence;
+        this.type = type;
+        this.permit = permit;
+        this.availability = availability;
+        this.previousRemaining = previousRemaining;
+    }
+
+    /**
+     * Computes the events that turn one status of a permit into the next. Itineraries are
+     * matched on their start date, length and division.
+     *
+     * @param previous The earlier status, or null if the permit had none
+     * @param current The new status, or null if the permit is no longer watched
+     * @return The events, without IDs assigned yet
+     */
+    public static List<AvailabilityEvent> diff(AvailabilityBoard.PermitStatus previous,
+                                               AvailabilityBoard.PermitStatus current) {
+        Map<String, PermitAvailability> before = new LinkedHashMap<>();
+        if (previous != null) {
+            for (PermitAvailability availability : previous.getAvailable()) {
+                before.put(key(availability), availability);
+            }
+        }
+        List<AvailabilityEvent> events = new ArrayList<>();
+        Permit permit = current != null ? current.getPermit() : previous.getPermit();
+        List<PermitAvailability> available = current != null ? current.getAvailable() : List.of();
+        for (PermitAvailability availability : available) {
+            PermitAvailability old = before.remove(key(availability));
+            if (old == null) {
+                events.add(new AvailabilityEvent(null, 0, Type.OPENED, permit, availability, 0));
+            } else if (old.getRemainingPermits() != availability.getRemainingPermits()) {
+                events.add(new AvailabilityEvent(null, 0, Type.CHANGED, permit, availability,
+                    old.getRemainingPermits()));
+            }
+        }
+        for (PermitAvailability closed : before.values()) {
+            events.add(new AvailabilityEvent(null, 0, Type.CLOSED, permit, closed, closed.getRemainingPermits()));
+        }
+        return events;
+    }
+
+    private static String key(PermitAvailability availability) {
+        return availability.getAvailableDate() + "/" + availability.getNights() + "/" + availability.getDivision();
+    }
+
+    AvailabilityEvent withId(String epoch, long eventSequence) {
+        return new AvailabilityEvent(epoch + "-" + eventSequence, eventSequence, type, permit, availability,
+            previousRemaining);
+    }
+
+    /**
+     * The event ID, {@code <epoch>-<sequence>}; see {@link AvailabilityEventStream}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Position of the event in its stream, starting at 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Permit getPermit() {
+        return permit;
+    }
+
+    public PermitAvailability getAvailability() {
+        return availability;
+    }
+
+    /**
+     * Permits remaining before the change; 0 for an itinerary that just opened.
+     */
+    public int getPreviousRemaining() {
+        return previousRemaining;
+    }
+
+    /**
+     * Returns the event as JSON. Permits remaining is 0 for a closed itinerary.
+     */
+    public String toJson() {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("id", id);
+        node.put("type", type.wireName());
+        node.put("permitId", permit.getId());
+        node.put("name", permit.getName());
+        node.put("date", availability.getAvailableDate());
+        node.put("nights", availability.getNights());
+        if (availability.hasDivision()) {
+            node.put("division", availability.getDivision());
+        }
+        node.put("remaining", type == Type.CLOSED ? 0 : availability.getRemainingPermits());
+        node.put("previousRemaining", previousRemaining);
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize availability event", e);
+        }
+    }
+}
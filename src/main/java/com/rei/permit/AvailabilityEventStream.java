@@ -0,0 +1,236 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans availability changes out to subscribers as {@link AvailabilityEvent}s.
+ * Events are numbered in publication order and the most recent ones are kept, so a
+ * subscriber that reconnects with the last ID it saw resumes without gaps. IDs are
+ * {@code <epoch>-<sequence>}, where the epoch is the time the stream was created, so an
+ * ID handed out before a restart is never mistaken for one of the current process. A
+ * subscriber resuming from an ID the stream cannot continue from - another epoch, or one
+ * older than the kept history - is resynchronized with every itinerary currently open
+ * instead. Each subscriber has a bounded buffer; one that falls behind is disconnected
+ * rather than slowing down the poller or the other subscribers.
+ */
+public class AvailabilityEventStream implements AvailabilityBoard.ChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityEventStream.class);
+
+    private final int historySize;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Deque<AvailabilityEvent> history = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Latest status of every permit, to resynchronize subscribers that cannot resume
+    private final Map<Permit, AvailabilityBoard.PermitStatus> statuses = new LinkedHashMap<>();
+    private final String epoch;
+    private long lastEventId;
+
+    /**
+     * Creates a new stream. It only knows the statuses it is notified of, so it should be
+     * registered with the board before anything is recorded.
+     *
+     * @param historySize Number of recent events kept for resuming subscribers
+     * @param bufferSize Events buffered per subscriber before it is disconnected
+     * @param maxSubscribers Maximum number of concurrent subscribers
+     */
+    public AvailabilityEventStream(int historySize, int bufferSize, int maxSubscribers) {
+        this(historySize, bufferSize, maxSubscribers, Long.toString(System.currentTimeMillis()));
+    }
+
+    AvailabilityEventStream(int historySize, int bufferSize, int maxSubscribers, String epoch) {
+        this.historySize = historySize;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.epoch = epoch;
+    }
+
+    @Override
+    public synchronized void onChange(AvailabilityBoard.PermitStatus previous, AvailabilityBoard.PermitStatus current) {
+        if (current != null) {
+            statuses.put(current.getPermit(), current);
+        } else {
+            statuses.remove(previous.getPermit());
+        }
+        publish(AvailabilityEvent.diff(previous, current));
+    }
+
+    /**
+     * Numbers the events and hands them to every interested subscriber without blocking.
+     *
+     * @param events The events to publish
+     */
+    public synchronized void publish(List<AvailabilityEvent> events) {
+        for (AvailabilityEvent unnumbered : events) {
+            AvailabilityEvent event = unnumbered.withId(epoch, ++lastEventId);
+            history.addLast(event);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * Registers a subscriber. One resuming from an ID this stream can continue from gets the
+     * events it missed; any other ID resynchronizes it with an {@code OPENED} event for every
+     * itinerary currently open, which replaces whatever it knew before.
+     *
+     * @param permitIds Permit IDs to receive events for, or an empty set for all of them
+     * @param lastSeenId ID of the last event the subscriber has seen, or null for live events only
+     * @return The subscriber, or null if the subscriber limit is reached
+     */
+    public synchronized Subscriber subscribe(Set<String> permitIds, String lastSeenId) {
+        if (subscribers.size() >= maxSubscribers) {
+            return null;
+        }
+        List<AvailabilityEvent> missed = new ArrayList<>();
+        boolean resync = false;
+        if (lastSeenId != null && !lastSeenId.trim().isEmpty()) {
+            long resumeAfter = resumePoint(lastSeenId.trim());
+            if (resumeAfter >= 0) {
+                for (AvailabilityEvent event : history) {
+                    if (event.getSequence() > resumeAfter && accepts(permitIds, event)) {
+                        missed.add(event);
+                    }
+                }
+            } else {
+                resync = true;
+                for (AvailabilityBoard.PermitStatus status : statuses.values()) {
+                    for (AvailabilityEvent event : AvailabilityEvent.diff(null, status)) {
+                        // Numbered as of the latest event, so a later reconnect resumes right after the snapshot
+                        if (accepts(permitIds, event)) {
+                            missed.add(event.withId(epoch, lastEventId));
+                        }
+                    }
+                }
+                logger.debug("Resynchronizing event subscriber that resumed from unknown event {}", lastSeenId);
+            }
+        }
+        Subscriber subscriber = new Subscriber(permitIds, missed, resync);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Sequence to resume after for an event ID, or -1 if the history cannot continue from it.
+     */
+    private long resumePoint(String eventId) {
+        int dash = eventId.lastIndexOf('-');
+        if (dash <= 0 || !eventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        long oldestKept = history.isEmpty() ? lastEventId + 1 : history.getFirst().getSequence();
+        if (sequence < oldestKept - 1 || sequence > lastEventId) {
+            return -1;
+        }
+        return sequence;
+    }
+
+    /**
+     * Prefix of every event ID handed out by this stream.
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public int getMaxSubscribers() {
+        return maxSubscribers;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private static boolean accepts(Set<String> permitIds, AvailabilityEvent event) {
+        return permitIds.isEmpty() || permitIds.contains(event.getPermit().getId());
+    }
+
+    /**
+     * One connected consumer of the stream.
+     */
+    public class Subscriber {
+        private final Set<String> permitIds;
+        private final List<AvailabilityEvent> missed;
+        private final boolean resync;
+        private final BlockingQueue<AvailabilityEvent> queue = new ArrayBlockingQueue<>(bufferSize);
+        private volatile boolean overflowed;
+
+        private Subscriber(Set<String> permitIds, List<AvailabilityEvent> missed, boolean resync) {
+            this.permitIds = permitIds;
+            this.missed = missed;
+            this.resync = resync;
+        }
+
+        private void offer(AvailabilityEvent event) {
+            if (overflowed || !accepts(permitIds, event)) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                overflowed = true;
+                subscribers.remove(this);
+                logger.warn("Disconnecting slow event subscriber after {} buffered events", bufferSize);
+            }
+        }
+
+        /**
+         * Events published before the subscriber connected that it has not seen yet.
+         */
+        public List<AvailabilityEvent> getMissedEvents() {
+            return Collections.unmodifiableList(missed);
+        }
+
+        /**
+         * Whether the missed events are a snapshot of everything open rather than the events
+         * since the subscriber's last ID, so it should discard what it knew before.
+         */
+        public boolean isResync() {
+            return resync;
+        }
+
+        /**
+         * Waits for the next event. Once the subscriber has overflowed this only drains
+         * what is buffered and does not wait.
+         *
+         * @param timeoutMs Maximum time to wait
+         * @return The event, or null if none arrived in time
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public AvailabilityEvent poll(long timeoutMs) throws InterruptedException {
+            return overflowed ? queue.poll() : queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Whether the subscriber fell behind and was dropped; buffered events can still be drained.
+         */
+        public boolean isOverflowed() {
+            return overflowed;
+        }
+
+        public void close() {
+            subscribers.remove(this);
+        }
+    }
+}
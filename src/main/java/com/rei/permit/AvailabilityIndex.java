@@ -0,0 +1,207 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remaining permits by division (zone or entry point) and date, parsed from an availability response.
+ *
+ * <p>Two response shapes are understood:
+ * <ul>
+ *   <li>a top-level {@code availability} array of {@code {"date", "remaining"}} entries, each
+ *       optionally carrying a {@code division} field; entries without one belong to
+ *       {@link #DEFAULT_DIVISION}</li>
+ *   <li>the recreation.gov month format,
+ *       {@code payload.availability.<division>.date_availability.<date>.remaining}</li>
+ * </ul>
+ * Only the requested divisions are indexed. For the month format, when the watched dates are
+ * known they are looked up directly instead of scanning every date in the division.
+ */
+public class AvailabilityIndex {
+    /** Division of entries that do not name one. */
+    public static final String DEFAULT_DIVISION = "";
+    /** Returned by {@link #getRemaining(String, long)} for dates without data. */
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, DivisionDays> divisions;
+
+    private AvailabilityIndex(Map<String, DivisionDays> divisions) {
+        this.divisions = divisions;
+    }
+
+    /**
+     * Builds an index of every division and date in the response.
+     *
+     * @param jsonNode The availability response
+     * @return The index
+     */
+    public static AvailabilityIndex build(JsonNode jsonNode) {
+        return build(jsonNode, Collections.emptySet(), DateTargets.parse(null));
+    }
+
+    /**
+     * Builds an index of the given divisions and dates.
+     *
+     * @param jsonNode The availability response
+     * @param watchedDivisions Divisions to index, or an empty set for all of them
+     * @param targets Dates to index; if empty every date is indexed
+     * @return The index
+     */
+    public static AvailabilityIndex build(JsonNode jsonNode, Set<String> watchedDivisions, DateTargets targets) {
+        Map<String, DivisionDays> divisions = new LinkedHashMap<>();
+        JsonNode array = jsonNode.get("availability");
+        if (array != null && array.isArray()) {
+            indexArray(array, watchedDivisions, targets, divisions);
+        }
+        JsonNode byDivision = jsonNode.path("payload").path("availability");
+        if (byDivision.isObject()) {
+            indexDivisions(byDivision, watchedDivisions, targets, divisions);
+        }
+        return new AvailabilityIndex(divisions);
+    }
+
+    private static void indexArray(JsonNode array, Set<String> watchedDivisions, DateTargets targets,
+                                   Map<String, DivisionDays> divisions) {
+        for (JsonNode entry : array) {
+            String division = entry.path("division").asText(DEFAULT_DIVISION);
+            if (!watchedDivisions.isEmpty() && !watchedDivisions.contains(division)) {
+                continue;
+            }
+            long day = DateTargets.parseEpochDay(entry.path("date").asText(null));
+            if (day == DateTargets.INVALID_DAY || (!targets.isEmpty() && !targets.matches(day))) {
+                continue;
+            }
+            divisions.computeIfAbsent(division, d -> new DivisionDays()).put(day, entry.path("remaining").asInt());
+        }
+    }
+
+    private static void indexDivisions(JsonNode byDivision, Set<String> watchedDivisions, DateTargets targets,
+                                       Map<String, DivisionDays> divisions) {
+        if (watchedDivisions.isEmpty()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = byDivision.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                indexDivision(field.getKey(), field.getValue().path("date_availability"), targets, divisions);
+            }
+        } else {
+            for (String division : watchedDivisions) {
+                JsonNode node = byDivision.get(division);
+                if (node != null) {
+                    indexDivision(division, node.path("date_availability"), targets, divisions);
+                }
+            }
+        }
+    }
+
+    private static void indexDivision(String division, JsonNode dates, DateTargets targets,
+                                      Map<String, DivisionDays> divisions) {
+        if (!dates.isObject() || dates.size() == 0) {
+            return;
+        }
+        DivisionDays days = divisions.computeIfAbsent(division, d -> new DivisionDays());
+        String firstKey = dates.fieldNames().next();
+        if (firstKey.length() >= 10 && !targets.isEmpty() && targets.getTargetCount() < dates.size()) {
+            // Keys share a format such as 2024-08-01T00:00:00Z; probe only the watched dates
+            String suffix = firstKey.substring(10);
+            for (long day = targets.getFirstEpochDay(); day != DateTargets.INVALID_DAY; day = targets.nextTarget(day + 1)) {
+                JsonNode date = dates.get(LocalDate.ofEpochDay(day) + suffix);
+                if (date != null) {
+                    days.put(day, date.path("remaining").asInt());
+                }
+            }
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = dates.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            long day = DateTargets.parseEpochDay(field.getKey());
+            if (day != DateTargets.INVALID_DAY && (targets.isEmpty() || targets.matches(day))) {
+                days.put(day, field.getValue().path("remaining").asInt());
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed divisions in response order.
+     */
+    public Set<String> getDivisions() {
+        return Collections.unmodifiableSet(divisions.keySet());
+    }
+
+    /**
+     * Returns the permits remaining for a division on a date.
+     *
+     * @param division The division ID
+     * @param epochDay The date as an epoch day
+     * @return Permits remaining, or {@link #UNKNOWN} if the date is not indexed
+     */
+    public int getRemaining(String division, long epochDay) {
+        DivisionDays days = divisions.get(division);
+        return days == null ? UNKNOWN : days.get(epochDay);
+    }
+
+    /**
+     * First indexed epoch day of a division, or {@link DateTargets#INVALID_DAY} if it has none.
+     */
+    public long getFirstDay(String division) {
+        DivisionDays days = divisions.get(division);
+        return days == null || days.isEmpty() ? DateTargets.INVALID_DAY : days.firstDay;
+    }
+
+    /**
+     * Last indexed epoch day of a division, or {@link DateTargets#INVALID_DAY} if it has none.
+     */
+    public long getLastDay(String division) {
+        DivisionDays days = divisions.get(division);
+        return days == null || days.isEmpty() ? DateTargets.INVALID_DAY : days.firstDay + days.length - 1;
+    }
+
+    /**
+     * Dense per-division array of remaining permits, indexed by days since {@code firstDay}.
+     */
+    private static class DivisionDays {
+        private long firstDay;
+        private int[] remaining = new int[0];
+        private int length;
+
+        void put(long day, int value) {
+            if (length == 0) {
+                firstDay = day;
+                remaining = new int[16];
+                Arrays.fill(remaining, UNKNOWN);
+            } else if (day < firstDay) {
+                int shift = (int) (firstDay - day);
+                int[] grown = new int[Math.max(remaining.length, length + shift)];
+                Arrays.fill(grown, UNKNOWN);
+                System.arraycopy(remaining, 0, grown, shift, length);
+                remaining = grown;
+                length += shift;
+                firstDay = day;
+            }
+            int offset = (int) (day - firstDay);
+            if (offset >= remaining.length) {
+                int oldLength = remaining.length;
+                remaining = Arrays.copyOf(remaining, Math.max(offset + 1, oldLength * 2));
+                Arrays.fill(remaining, oldLength, remaining.length, UNKNOWN);
+            }
+            remaining[offset] = value;
+            length = Math.max(length, offset + 1);
+        }
+
+        int get(long day) {
+            long offset = day - firstDay;
+            return offset < 0 || offset >= length ? UNKNOWN : remaining[(int) offset];
+        }
+
+        boolean isEmpty() {
+            return length == 0;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the openings in an {@link AvailabilityIndex} that match a permit's {@link DateTargets}.
+ * Each division is evaluated on its own, since an itinerary has to stay in one zone.
+ */
+public class AvailabilityMatcher {
+
+    private AvailabilityMatcher() {
+    }
+
+    /**
+     * Indexes every division of a response and finds matching openings.
+     *
+     * @param jsonNode The availability response
+     * @param targets The permit's targets; if empty the first open date of any kind matches
+     * @return The matching openings
+     */
+    public static List<PermitAvailability> findMatches(JsonNode jsonNode, DateTargets targets) {
+        return findMatches(AvailabilityIndex.build(jsonNode, Collections.emptySet(), targets), targets);
+    }
+
+    /**
+     * Finds matching openings. For single-night targets every open target date is a match.
+     * For multi-night targets the open target nights of each division are marked in one pass
+     * over the watched dates, and every night that starts the required number of consecutive
+     * open nights is a match, so a long run yields one itinerary per possible start.
+     *
+     * @param index The indexed availability
+     * @param targets The permit's targets; if empty the first open date of any kind matches
+     * @return The matching openings, grouped by division in date order
+     */
+    public static List<PermitAvailability> findMatches(AvailabilityIndex index, DateTargets targets) {
+        if (targets.isEmpty()) {
+            return firstAvailable(index);
+        }
+
+        List<PermitAvailability> matches = new ArrayList<>();
+        for (String division : index.getDivisions()) {
+            long firstDay = Math.max(targets.getFirstEpochDay(), index.getFirstDay(division));
+            long lastDay = Math.min(targets.getLastEpochDay(), index.getLastDay(division));
+            if (lastDay < firstDay) {
+                continue;
+            }
+            int span = (int) (lastDay - firstDay + 1);
+            BitSet open = new BitSet(span);
+            for (long day = targets.nextTarget(firstDay); day != DateTargets.INVALID_DAY && day <= lastDay;
+                 day = targets.nextTarget(day + 1)) {
+                if (index.getRemaining(division, day) >= targets.getMinPermits()) {
+                    open.set((int) (day - firstDay));
+                }
+            }
+
+            int nights = targets.getNights();
+            for (int runStart = open.nextSetBit(0); runStart >= 0; ) {
+                int runEnd = open.nextClearBit(runStart);
+                for (int start = runStart; start + nights <= runEnd; start++) {
+                    int fewest = Integer.MAX_VALUE;
+                    for (int night = start; night < start + nights; night++) {
+                        fewest = Math.min(fewest, index.getRemaining(division, firstDay + night));
+                    }
+                    String date = LocalDate.ofEpochDay(firstDay + start).toString();
+                    matches.add(new PermitAvailability(true, date, fewest, nights, division));
+                }
+                runStart = open.nextSetBit(runEnd);
+            }
+        }
+        return matches;
+    }
+
+    private static List<PermitAvailability> firstAvailable(AvailabilityIndex index) {
+        PermitAvailability earliest = null;
+        long earliestDay = Long.MAX_VALUE;
+        for (String division : index.getDivisions()) {
+            long lastDay = Math.min(index.getLastDay(division), earliestDay - 1);
+            for (long day = index.getFirstDay(division); day <= lastDay; day++) {
+                int remaining = index.getRemaining(division, day);
+                if (remaining > 0) {
+                    earliest = new PermitAvailability(true, LocalDate.ofEpochDay(day).toString(), remaining, 1, division);
+                    earliestDay = day;
+                    break;
+                }
+            }
+        }
+        return earliest == null ? Collections.emptyList() : Collections.singletonList(earliest);
+    }
+}
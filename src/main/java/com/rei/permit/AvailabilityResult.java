@@ -0,0 +1,67 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Outcome of fetching the availability of one permit in a bulk request.
+ * Exactly one of the availability and the error is set.
+ */
+public class AvailabilityResult {
+    private final String permitId;
+    private final JsonNode availability;
+    private final Exception error;
+    private final long fetchStartNanos;
+    private final long fetchEndNanos;
+
+    private AvailabilityResult(String permitId, JsonNode availability, Exception error,
+                               long fetchStartNanos, long fetchEndNanos) {
+        this.permitId = permitId;
+        this.availability = availability;
+        this.error = error;
+        this.fetchStartNanos = fetchStartNanos;
+        this.fetchEndNanos = fetchEndNanos;
+    }
+
+    public static AvailabilityResult success(String permitId, JsonNode availability) {
+        return success(permitId, availability, 0, 0);
+    }
+
+    public static AvailabilityResult success(String permitId, JsonNode availability,
+                                             long fetchStartNanos, long fetchEndNanos) {
+        return new AvailabilityResult(permitId, availability, null, fetchStartNanos, fetchEndNanos);
+    }
+
+    public static AvailabilityResult failure(String permitId, Exception error) {
+        return new AvailabilityResult(permitId, null, error, 0, 0);
+    }
+
+    /**
+     * {@link System#nanoTime()} when the fetch started, or 0 if unknown.
+     */
+    public long getFetchStartNanos() {
+        return fetchStartNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the fetch completed, or 0 if unknown.
+     */
+    public long getFetchEndNanos() {
+        return fetchEndNanos;
+    }
+
+    public String getPermitId() {
+        return permitId;
+    }
+
+    public JsonNode getAvailability() {
+        return availability;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
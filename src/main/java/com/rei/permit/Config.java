@@ -5,6 +5,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Properties;
 
 public class Config {
@@ -12,27 +16,77 @@ public class Config {
     private static final Properties properties = new Properties();
     
     static {
-        try (InputStream input = Config.class.getClassLoader().getResourceAsStream("config.properties")) {
-            if (input == null) {
-                throw new RuntimeException("Unable to find config.properties");
-            }
-            properties.load(input);
+        try {
+            properties.putAll(load());
         } catch (IOException e) {
             logger.error("Error loading configuration", e);
             throw new RuntimeException("Error loading configuration", e);
         }
     }
 
+    /**
+     * Reads the bundled config.properties and, on top of it, the file named by the
+     * {@code config.file} system property if one is set.
+     */
+    private static Properties load() throws IOException {
+        Properties loaded = new Properties();
+        try (InputStream input = Config.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (input == null) {
+                throw new IOException("Unable to find config.properties");
+            }
+            loaded.load(input);
+        }
+        Path file = getConfigFile();
+        if (file != null) {
+            try (InputStream input = Files.newInputStream(file)) {
+                loaded.load(input);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the external configuration file given with {@code -Dconfig.file}, or null.
+     */
+    public static Path getConfigFile() {
+        String file = System.getProperty("config.file");
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+    }
+
+    /**
+     * Reads the configuration again. If it cannot be read the current values are kept.
+     *
+     * @throws IOException if the configuration cannot be read
+     */
+    public static void reload() throws IOException {
+        Properties loaded = load();
+        properties.keySet().retainAll(loaded.keySet());
+        properties.putAll(loaded);
+    }
+
+    /**
+     * Returns a configuration value. A system property with the same key takes precedence,
+     * so several processes can share one jar and override e.g. their cluster node ID.
+     */
     public static String getProperty(String key) {
-        return properties.getProperty(key);
+        return System.getProperty(key, properties.getProperty(key));
+    }
+
+    /**
+     * Returns a copy of all configuration properties.
+     */
+    public static Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
     }
 
     public static int getIntProperty(String key) {
-        return Integer.parseInt(properties.getProperty(key));
+        return Integer.parseInt(getProperty(key));
     }
 
     public static long getLongProperty(String key) {
-        return Long.parseLong(properties.getProperty(key));
+        return Long.parseLong(getProperty(key));
     }
 
     // Specific configuration getters
@@ -52,6 +106,142 @@ public class Config {
         return getIntProperty("api.timeout.seconds");
     }
 
+    public static int getApiMaxConnections() {
+        return getIntProperty("api.max.connections");
+    }
+
+    public static int getApiRequestIntervalMillis() {
+        return getIntProperty("api.request.interval.ms");
+    }
+
+    public static int getApiCacheTtlSeconds() {
+        return getIntProperty("api.cache.ttl.seconds");
+    }
+
+    /**
+     * Port of the availability query API, or 0 if the API is disabled.
+     */
+    public static int getQueryServerPort() {
+        String port = getProperty("query.server.port");
+        return port == null || port.trim().isEmpty() ? 0 : Integer.parseInt(port.trim());
+    }
+
+    public static int getQueryServerThreads() {
+        return getIntProperty("query.server.threads");
+    }
+
+    public static int getQueryEventsHistory() {
+        return getIntProperty("query.events.history");
+    }
+
+    public static int getQueryEventsBuffer() {
+        return getIntProperty("query.events.buffer");
+    }
+
+    public static int getQueryEventsMaxSubscribers() {
+        return getIntProperty("query.events.max.subscribers");
+    }
+
+    public static double getSmsRatePerSecond() {
+        return Double.parseDouble(getProperty("sms.rate.per.second"));
+    }
+
+    public static int getSmsMaxAttempts() {
+        return getIntProperty("sms.max.attempts");
+    }
+
+    public static long getSmsBackoffInitialMs() {
+        return getLongProperty("sms.backoff.initial.ms");
+    }
+
+    public static long getSmsBackoffMaxMs() {
+        return getLongProperty("sms.backoff.max.ms");
+    }
+
+    public static String getApiCaptureMode() {
+        String mode = getProperty("api.capture.mode");
+        return mode == null ? "" : mode.trim().toLowerCase();
+    }
+
+    public static String getApiCaptureFile() {
+        return getProperty("api.capture.file");
+    }
+
+    public static double getApiReplaySpeed() {
+        return Double.parseDouble(getProperty("api.replay.speed"));
+    }
+
+    public static boolean isJfrEnabled() {
+        return Boolean.parseBoolean(getProperty("jfr.enabled"));
+    }
+
+    public static int getJfrMaxAgeMinutes() {
+        return getIntProperty("jfr.max.age.minutes");
+    }
+
+    public static String getJfrDestination() {
+        return getProperty("jfr.destination");
+    }
+
+    public static long getApiMaxBodyBytes() {
+        return getLongProperty("api.max.body.bytes");
+    }
+
+    /**
+     * Returns the hedge policy for availability requests, or null if hedging is disabled.
+     */
+    public static HedgePolicy getApiHedgePolicy() {
+        if (!Boolean.parseBoolean(getProperty("api.hedge.enabled"))) {
+            return null;
+        }
+        return new HedgePolicy(
+            Double.parseDouble(getProperty("api.hedge.percentile")),
+            Duration.ofMillis(getLongProperty("api.hedge.min.delay.ms")),
+            Double.parseDouble(getProperty("api.hedge.max.extra.ratio")));
+    }
+
+    public static CycleScheduler.OverrunPolicy getCycleOverrunPolicy() {
+        return CycleScheduler.OverrunPolicy.fromString(getProperty("cycle.overrun.policy"));
+    }
+
+    public static int getShutdownDrainTimeoutSeconds() {
+        return getIntProperty("shutdown.drain.timeout.seconds");
+    }
+
+    public static String getStateDirectory() {
+        return getProperty("state.dir");
+    }
+
+    /**
+     * File each run appends its startup time to, or null if startup is only logged.
+     */
+    public static Path getStartupRecordFile() {
+        String file = getProperty("startup.record.file");
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+    }
+
+    public static String getClusterDirectory() {
+        return getProperty("cluster.dir");
+    }
+
+    public static String getClusterNodeId() {
+        String nodeId = getProperty("cluster.node.id");
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            String host;
+            try {
+                host = java.net.InetAddress.getLocalHost().getHostName();
+            } catch (java.net.UnknownHostException e) {
+                host = "localhost";
+            }
+            return host + "-" + ProcessHandle.current().pid();
+        }
+        return nodeId.trim();
+    }
+
+    public static int getClusterLeaseTtlSeconds() {
+        return getIntProperty("cluster.lease.ttl.seconds");
+    }
+
     public static String getLoggingFilePath() {
         return getProperty("logging.file.path");
     }
@@ -0,0 +1,108 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a configuration file and runs a callback after it changes. Editors often save in
+ * several steps (truncate and write, or write a temporary file and rename it), so events are
+ * collected until the file has been quiet for the settle delay and then reported once.
+ */
+public class ConfigFileWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigFileWatcher.class);
+
+    private final Path file;
+    private final Duration settleDelay;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * Creates a watcher; call {@link #start()} to begin watching.
+     *
+     * @param file The file to watch
+     * @param settleDelay How long the file must be quiet before the change is reported
+     * @param onChange Called on the watcher thread after each change
+     */
+    public ConfigFileWatcher(Path file, Duration settleDelay, Runnable onChange) {
+        this.file = file.toAbsolutePath();
+        this.settleDelay = settleDelay;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching the file's directory.
+     *
+     * @throws IOException if the directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::run, "config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} for changes", file);
+    }
+
+    /**
+     * Stops watching.
+     */
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Error closing watch service: {}", e.getMessage());
+        }
+        thread.interrupt();
+        watchService = null;
+    }
+
+    private void run() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                if (!affectsFile(service.take())) {
+                    continue;
+                }
+                // Wait for the writes to settle, absorbing the events they cause
+                WatchKey more;
+                while ((more = service.poll(settleDelay.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    affectsFile(more);
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Ignoring change to {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private boolean affectsFile(WatchKey key) {
+        boolean affected = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                affected = true;
+            }
+        }
+        key.reset();
+        return affected;
+    }
+}
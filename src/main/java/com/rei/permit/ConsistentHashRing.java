@@ -0,0 +1,69 @@
+package com.rei.permit;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping keys (permit IDs) to nodes.
+ * Each node is placed on the ring at several virtual points so keys spread
+ * evenly, and adding or removing a node only moves the keys that node owned.
+ */
+public class ConsistentHashRing {
+    private static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * Creates a ring over the given nodes with the default number of virtual nodes.
+     *
+     * @param nodes The node IDs
+     */
+    public ConsistentHashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Creates a ring over the given nodes.
+     *
+     * @param nodes The node IDs
+     * @param virtualNodes Number of points each node occupies on the ring
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * Returns the node that owns the given key.
+     *
+     * @param key The key to look up
+     * @return The owning node ID, or null if the ring is empty
+     */
+    public String nodeFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(key));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
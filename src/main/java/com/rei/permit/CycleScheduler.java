@@ -0,0 +1,250 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a polling cycle at a fixed interval with a managed lifecycle.
+ * Ticks are issued from a dedicated scheduler thread while the cycle itself runs
+ * on a single worker thread, so an overrunning cycle never piles up queued runs:
+ * depending on the {@link OverrunPolicy} the missed tick is either dropped or
+ * coalesced into one catch-up run. A watchdog reports cycles that exceed the interval.
+ * The ticker and worker threads are not daemons: a started scheduler keeps the JVM alive
+ * until {@link #stop(Duration)} is called.
+ */
+public class CycleScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(CycleScheduler.class);
+    private static final long MIN_WATCHDOG_PERIOD_MS = 1000;
+
+    /**
+     * What to do with a tick that fires while the previous cycle is still running.
+     */
+    public enum OverrunPolicy {
+        /** Drop the tick; the next cycle starts at the next regular tick. */
+        SKIP,
+        /** Remember the tick and run exactly one catch-up cycle as soon as the current one ends. */
+        COALESCE;
+
+        public static OverrunPolicy fromString(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return COALESCE;
+            }
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final String name;
+    private final Runnable cycle;
+    private final Duration interval;
+    private final OverrunPolicy overrunPolicy;
+    private final ScheduledExecutorService ticker;
+    private final boolean ownsTicker;
+    private final ExecutorService worker;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final AtomicLong cycleStartNanos = new AtomicLong();
+    private final AtomicLong completedCycles = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private volatile boolean overrunReported;
+    private volatile boolean stopped;
+    private ScheduledFuture<?> tickTask;
+    private ScheduledFuture<?> watchdogTask;
+
+    /**
+     * Creates a new scheduler. Nothing runs until {@link #start()} is called.
+     *
+     * @param name Name used for thread names and log messages
+     * @param cycle The cycle to run on every tick
+     * @param interval Time between ticks
+     * @param overrunPolicy How ticks that fire during a running cycle are handled
+     */
+    public CycleScheduler(String name, Runnable cycle, Duration interval, OverrunPolicy overrunPolicy) {
+        this(name, cycle, interval, overrunPolicy,
+            Executors.newSingleThreadScheduledExecutor(r -> newThread(r, name + "-ticker")), true);
+    }
+
+    /**
+     * Creates a new scheduler whose ticks and watchdog run on a shared executor.
+     * The shared executor is left running when this scheduler stops, so many
+     * schedulers can be driven by a single ticking thread.
+     *
+     * @param name Name used for thread names and log messages
+     * @param cycle The cycle to run on every tick
+     * @param interval Time between ticks
+     * @param overrunPolicy How ticks that fire during a running cycle are handled
+     * @param sharedTicker Executor that issues ticks
+     */
+    public CycleScheduler(String name, Runnable cycle, Duration interval, OverrunPolicy overrunPolicy,
+                          ScheduledExecutorService sharedTicker) {
+        this(name, cycle, interval, overrunPolicy, sharedTicker, false);
+    }
+
+    private CycleScheduler(String name, Runnable cycle, Duration interval, OverrunPolicy overrunPolicy,
+                           ScheduledExecutorService ticker, boolean ownsTicker) {
+        this.name = name;
+        this.cycle = cycle;
+        this.interval = interval;
+        this.overrunPolicy = overrunPolicy;
+        this.ticker = ticker;
+        this.ownsTicker = ownsTicker;
+        this.worker = Executors.newSingleThreadExecutor(r -> newThread(r, name + "-worker"));
+    }
+
+    private static Thread newThread(Runnable r, String threadName) {
+        return new Thread(r, threadName);
+    }
+
+    /**
+     * Starts ticking immediately and then at the configured interval.
+     */
+    public synchronized void start() {
+        if (stopped) {
+            throw new IllegalStateException("Scheduler " + name + " has been stopped");
+        }
+        if (tickTask != null) {
+            return;
+        }
+        long intervalMs = interval.toMillis();
+        long watchdogMs = Math.max(MIN_WATCHDOG_PERIOD_MS, intervalMs / 4);
+        tickTask = ticker.scheduleAtFixedRate(this::tick, 0, intervalMs, TimeUnit.MILLISECONDS);
+        watchdogTask = ticker.scheduleAtFixedRate(this::watchdog, watchdogMs, watchdogMs, TimeUnit.MILLISECONDS);
+        logger.info("Scheduler {} started with interval {} and overrun policy {}", name, interval, overrunPolicy);
+    }
+
+    /**
+     * Stops issuing ticks and waits for an in-flight cycle to finish.
+     * If the cycle does not finish within the drain timeout it is interrupted, and stop
+     * waits up to the drain timeout again for the interrupted cycle to return.
+     *
+     * @param drainTimeout Maximum time to wait for the running cycle
+     * @return true if the scheduler drained cleanly within the timeout
+     */
+    public boolean stop(Duration drainTimeout) {
+        synchronized (this) {
+            if (stopped) {
+                return true;
+            }
+            stopped = true;
+            if (tickTask != null) {
+                tickTask.cancel(false);
+                watchdogTask.cancel(false);
+            }
+        }
+        if (ownsTicker) {
+            ticker.shutdownNow();
+        }
+        worker.shutdown();
+        boolean drained;
+        try {
+            drained = worker.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        if (!drained) {
+            logger.warn("Scheduler {} did not drain within {}, interrupting the running cycle", name, drainTimeout);
+            worker.shutdownNow();
+            // Give the interrupted cycle the same time again to wind down, so callers can shut
+            // down what the cycle uses once this returns
+            try {
+                if (!worker.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    logger.warn("Scheduler {} cycle did not stop after being interrupted", name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            logger.info("Scheduler {} stopped after {} cycles", name, completedCycles.get());
+        }
+        return drained;
+    }
+
+    private void tick() {
+        if (stopped) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            overruns.incrementAndGet();
+            if (overrunPolicy == OverrunPolicy.COALESCE) {
+                pending.set(true);
+                logger.warn("Scheduler {} tick fired while a cycle is still running; coalescing into one catch-up run", name);
+            } else {
+                logger.warn("Scheduler {} tick fired while a cycle is still running; skipping", name);
+            }
+            return;
+        }
+        try {
+            worker.execute(this::runCycles);
+        } catch (Exception e) {
+            // Rejected because stop() raced with this tick
+            running.set(false);
+        }
+    }
+
+    private void runCycles() {
+        do {
+            try {
+                do {
+                    pending.set(false);
+                    runOnce();
+                } while (pending.get() && !stopped);
+            } finally {
+                running.set(false);
+            }
+            // A tick may have set pending between the last check and releasing the flag
+        } while (pending.get() && !stopped && running.compareAndSet(false, true));
+    }
+
+    private void runOnce() {
+        long start = System.nanoTime();
+        overrunReported = false;
+        cycleStartNanos.set(start);
+        try {
+            cycle.run();
+        } catch (Exception e) {
+            logger.error("Error running cycle for scheduler {}", name, e);
+        } finally {
+            cycleStartNanos.set(0);
+            completedCycles.incrementAndGet();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (elapsedMs > interval.toMillis()) {
+                logger.warn("Scheduler {} cycle took {} ms, exceeding the {} ms interval", name, elapsedMs, interval.toMillis());
+            }
+        }
+    }
+
+    private void watchdog() {
+        long start = cycleStartNanos.get();
+        if (start == 0 || overrunReported) {
+            return;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (elapsedMs > interval.toMillis()) {
+            overrunReported = true;
+            logger.warn("Watchdog: scheduler {} cycle has been running for {} ms, exceeding the {} ms interval",
+                name, elapsedMs, interval.toMillis());
+        }
+    }
+
+    public long getCompletedCycles() {
+        return completedCycles.get();
+    }
+
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,379 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The dates a permit is watched for, compiled from a target expression into a bitset
+ * over epoch days so that matching a date is a single bit test.
+ *
+ * <p>An expression is a comma-separated list of terms:
+ * <ul>
+ *   <li>{@code 2024-08-01} - a single date</li>
+ *   <li>{@code 2024-07-01..2024-08-31} - an inclusive range of dates</li>
+ *   <li>{@code 2024-06-01..2024-09-30@FRI+SAT} - a range restricted to some weekdays</li>
+ *   <li>{@code !2024-07-04} or {@code !2024-07-01..2024-07-07} - exclude dates from the targets</li>
+ *   <li>{@code nights=3} - only alert for itineraries of 3 consecutive target nights</li>
+ *   <li>{@code min=2} - only count nights with at least 2 permits remaining</li>
+ * </ul>
+ * Invalid terms are reported and skipped. An empty expression watches every date, so an
+ * expression whose exclusions leave no dates, such as {@code !2024-07-04} on its own, is rejected.
+ */
+public class DateTargets {
+    private static final Logger logger = LoggerFactory.getLogger(DateTargets.class);
+
+    /** Returned by {@link #parseEpochDay(CharSequence)} for text that is not a date. */
+    public static final long INVALID_DAY = Long.MIN_VALUE;
+
+    private static final int MAX_RANGE_DAYS = 3660;
+    private static final DateTargets NONE = new DateTargets(0, new BitSet(), 1, 1);
+
+    private final long baseEpochDay;
+    private final BitSet days;
+    private final int nights;
+    private final int minPermits;
+
+    private DateTargets(long baseEpochDay, BitSet days, int nights, int minPermits) {
+        this.baseEpochDay = baseEpochDay;
+        this.days = days;
+        this.nights = nights;
+        this.minPermits = minPermits;
+    }
+
+    /**
+     * Compiles an explicit set of dates.
+     *
+     * @param dates The target dates
+     * @return The compiled targets
+     */
+    public static DateTargets of(Collection<LocalDate> dates) {
+        Builder builder = new Builder();
+        for (LocalDate date : dates) {
+            builder.include(date.toEpochDay(), date.toEpochDay(), null);
+        }
+        return builder.build(1, 1);
+    }
+
+    /**
+     * Compiles a target expression.
+     *
+     * @param expression The expression, or null/blank for no targets
+     * @return The compiled targets
+     * @throws IllegalArgumentException if exclusions leave no dates to watch
+     */
+    public static DateTargets parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return NONE;
+        }
+        Builder builder = new Builder();
+        int nights = 1;
+        int minPermits = 1;
+        for (String rawTerm : expression.split(",")) {
+            String term = rawTerm.trim();
+            if (term.isEmpty()) {
+                continue;
+            }
+            try {
+                if (term.startsWith("nights=")) {
+                    nights = parsePositive(term.substring("nights=".length()));
+                } else if (term.startsWith("min=")) {
+                    minPermits = parsePositive(term.substring("min=".length()));
+                } else if (term.startsWith("!")) {
+                    builder.exclude(parseRange(term.substring(1)));
+                } else {
+                    builder.include(parseRange(term));
+                }
+            } catch (IllegalArgumentException e) {
+                // Log error and continue with other terms
+                logger.warn("Ignoring invalid date term '{}': {}", term, e.getMessage());
+            }
+        }
+        DateTargets targets = builder.build(nights, minPermits);
+        if (builder.hasExcludes() && targets.days.isEmpty()) {
+            // Empty targets mean any date, the opposite of what the exclusions ask for
+            throw new IllegalArgumentException("No dates left after exclusions in '" + expression
+                + "'; list the dates or range to exclude them from");
+        }
+        return targets;
+    }
+
+    private static int parsePositive(String value) {
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < 1) {
+            throw new IllegalArgumentException("Must be positive: " + value);
+        }
+        return parsed;
+    }
+
+    private static Range parseRange(String term) {
+        Set<DayOfWeek> weekdays = null;
+        int at = term.indexOf('@');
+        if (at >= 0) {
+            weekdays = new LinkedHashSet<>();
+            for (String day : term.substring(at + 1).split("\\+")) {
+                weekdays.add(parseWeekday(day.trim()));
+            }
+            term = term.substring(0, at);
+        }
+        int dots = term.indexOf("..");
+        long start = parseEpochDay(dots >= 0 ? term.substring(0, dots).trim() : term.trim());
+        long end = dots >= 0 ? parseEpochDay(term.substring(dots + 2).trim()) : start;
+        if (start == INVALID_DAY || end == INVALID_DAY || end < start || end - start > MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Invalid date range: " + term);
+        }
+        return new Range(start, end, weekdays);
+    }
+
+    private static DayOfWeek parseWeekday(String day) {
+        String upper = day.toUpperCase(Locale.ROOT);
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (dayOfWeek.name().startsWith(upper) && upper.length() >= 3) {
+                return dayOfWeek;
+            }
+        }
+        throw new IllegalArgumentException("Invalid weekday: " + day);
+    }
+
+    /**
+     * Parses a {@code YYYY-MM-DD} date, optionally followed by a time, into an epoch day
+     * without allocating.
+     *
+     * @param text The text to parse
+     * @return The epoch day, or {@link #INVALID_DAY} if the text does not start with a valid date
+     */
+    public static long parseEpochDay(CharSequence text) {
+        if (text == null || text.length() < 10 || text.charAt(4) != '-' || text.charAt(7) != '-'
+            || (text.length() > 10 && text.charAt(10) != 'T' && text.charAt(10) != ' ')) {
+            return INVALID_DAY;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID_DAY;
+        }
+        // Days from civil date, see http://howardhinnant.github.io/date_algorithms.html
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(CharSequence text, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Returns whether the given epoch day is a target.
+     *
+     * @param epochDay The day to test
+     * @return true if the day is a target
+     */
+    public boolean matches(long epochDay) {
+        long offset = epochDay - baseEpochDay;
+        return offset >= 0 && offset < days.length() && days.get((int) offset);
+    }
+
+    public boolean matches(LocalDate date) {
+        return matches(date.toEpochDay());
+    }
+
+    public boolean isEmpty() {
+        return days.isEmpty();
+    }
+
+    /**
+     * Number of target dates.
+     */
+    public int getTargetCount() {
+        return days.cardinality();
+    }
+
+    /**
+     * Returns the first target epoch day on or after the given day.
+     *
+     * @param fromEpochDay The day to start from
+     * @return The next target day, or {@link #INVALID_DAY} if there is none
+     */
+    public long nextTarget(long fromEpochDay) {
+        long offset = Math.max(0, fromEpochDay - baseEpochDay);
+        if (offset >= days.length()) {
+            return INVALID_DAY;
+        }
+        int next = days.nextSetBit((int) offset);
+        return next < 0 ? INVALID_DAY : baseEpochDay + next;
+    }
+
+    /**
+     * Number of consecutive target nights an itinerary needs.
+     */
+    public int getNights() {
+        return nights;
+    }
+
+    /**
+     * Minimum permits remaining for a night to count.
+     */
+    public int getMinPermits() {
+        return minPermits;
+    }
+
+    /**
+     * First target epoch day, only meaningful when not empty.
+     */
+    public long getFirstEpochDay() {
+        return baseEpochDay + days.nextSetBit(0);
+    }
+
+    /**
+     * Last target epoch day, only meaningful when not empty.
+     */
+    public long getLastEpochDay() {
+        return baseEpochDay + days.length() - 1;
+    }
+
+    /**
+     * Materializes the target dates.
+     *
+     * @return The target dates in order
+     */
+    public Set<LocalDate> toDates() {
+        if (days.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<LocalDate> dates = new LinkedHashSet<>();
+        for (int i = days.nextSetBit(0); i >= 0; i = days.nextSetBit(i + 1)) {
+            dates.add(LocalDate.ofEpochDay(baseEpochDay + i));
+        }
+        return dates;
+    }
+
+    /**
+     * Two targets are equal when they select the same days with the same itinerary rules,
+     * however their expressions were written.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateTargets)) {
+            return false;
+        }
+        DateTargets other = (DateTargets) o;
+        if (nights != other.nights || minPermits != other.minPermits || isEmpty() != other.isEmpty()) {
+            return false;
+        }
+        return isEmpty() || (getFirstEpochDay() == other.getFirstEpochDay() && normalizedDays().equals(other.normalizedDays()));
+    }
+
+    @Override
+    public int hashCode() {
+        return isEmpty() ? 31 * nights + minPermits
+            : ((int) getFirstEpochDay() * 31 + normalizedDays().hashCode()) * 31 + nights * 17 + minPermits;
+    }
+
+    private BitSet normalizedDays() {
+        return days.get(days.nextSetBit(0), days.length());
+    }
+
+    private static class Range {
+        private final long start;
+        private final long end;
+        private final Set<DayOfWeek> weekdays;
+
+        Range(long start, long end, Set<DayOfWeek> weekdays) {
+            this.start = start;
+            this.end = end;
+            this.weekdays = weekdays;
+        }
+
+        boolean contains(long epochDay) {
+            // 1970-01-01 was a Thursday
+            return weekdays == null || weekdays.contains(DayOfWeek.of(Math.floorMod(epochDay + 3, 7) + 1));
+        }
+    }
+
+    private static class Builder {
+        private final List<Range> includes = new ArrayList<>();
+        private final List<Range> excludes = new ArrayList<>();
+
+        void include(long start, long end, Set<DayOfWeek> weekdays) {
+            includes.add(new Range(start, end, weekdays));
+        }
+
+        void include(Range range) {
+            includes.add(range);
+        }
+
+        void exclude(Range range) {
+            excludes.add(range);
+        }
+
+        boolean hasExcludes() {
+            return !excludes.isEmpty();
+        }
+
+        DateTargets build(int nights, int minPermits) {
+            if (includes.isEmpty()) {
+                return new DateTargets(0, new BitSet(), nights, minPermits);
+            }
+            long base = Long.MAX_VALUE;
+            for (Range range : includes) {
+                base = Math.min(base, range.start);
+            }
+            BitSet bits = new BitSet();
+            for (Range range : includes) {
+                apply(bits, base, range, true);
+            }
+            for (Range range : excludes) {
+                apply(bits, base, range, false);
+            }
+            return new DateTargets(base, bits, nights, minPermits);
+        }
+
+        private static void apply(BitSet bits, long base, Range range, boolean value) {
+            for (long day = Math.max(range.start, base); day <= range.end; day++) {
+                if (range.contains(day)) {
+                    bits.set((int) (day - base), value);
+                }
+            }
+        }
+    }
+}
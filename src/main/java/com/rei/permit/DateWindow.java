@@ -0,0 +1,81 @@
+package com.rei.permit;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An inclusive range of dates requested from recreation.gov in one availability call.
+ */
+public class DateWindow {
+    private final LocalDate start;
+    private final LocalDate end;
+
+    public DateWindow(LocalDate start, LocalDate end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Computes the fewest windows that cover the given dates. Dates closer together than
+     * {@code maxGapDays} share a window, since one slightly larger response is cheaper than
+     * an extra round trip; larger gaps start a new window.
+     *
+     * @param dates The dates to cover
+     * @param maxGapDays Largest number of unwatched days allowed inside a window
+     * @return The covering windows in date order
+     */
+    public static List<DateWindow> cover(Collection<LocalDate> dates, int maxGapDays) {
+        if (dates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DateWindow> windows = new ArrayList<>();
+        LocalDate windowStart = null;
+        LocalDate windowEnd = null;
+        for (LocalDate date : new TreeSet<>(dates)) {
+            if (windowStart == null) {
+                windowStart = date;
+            } else if (ChronoUnit.DAYS.between(windowEnd, date) - 1 > maxGapDays) {
+                windows.add(new DateWindow(windowStart, windowEnd));
+                windowStart = date;
+            }
+            windowEnd = date;
+        }
+        windows.add(new DateWindow(windowStart, windowEnd));
+        return windows;
+    }
+
+    public LocalDate getStart() {
+        return start;
+    }
+
+    public LocalDate getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DateWindow)) {
+            return false;
+        }
+        DateWindow other = (DateWindow) o;
+        return start.equals(other.start) && end.equals(other.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + end.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return start + ".." + end;
+    }
+}
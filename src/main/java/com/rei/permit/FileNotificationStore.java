@@ -0,0 +1,81 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Notification store backed by marker files in a directory.
+ * A key is recorded by atomically creating its marker file, so when several
+ * checker processes share the directory exactly one of them wins each key
+ * and alerts; the others see the key as already notified. Because the markers
+ * live on disk they also survive restarts.
+ */
+public class FileNotificationStore implements NotificationStore {
+    private static final Logger logger = LoggerFactory.getLogger(FileNotificationStore.class);
+
+    private final Path directory;
+
+    /**
+     * Creates a new store in the given directory, creating it if needed.
+     *
+     * @param directory The directory holding marker files
+     * @throws IOException if the directory cannot be created
+     */
+    public FileNotificationStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean markNotified(String key) {
+        try {
+            Files.createFile(markerFile(key));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record notification " + key, e);
+        }
+    }
+
+    @Override
+    public boolean clear(String key) {
+        try {
+            return Files.deleteIfExists(markerFile(key));
+        } catch (IOException e) {
+            logger.error("Failed to clear notification {}: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void expire(Duration ttl) {
+        Instant cutoff = Instant.now().minus(ttl);
+        try (DirectoryStream<Path> markers = Files.newDirectoryStream(directory)) {
+            for (Path marker : markers) {
+                try {
+                    if (Files.getLastModifiedTime(marker).toInstant().isBefore(cutoff)) {
+                        Files.deleteIfExists(marker);
+                    }
+                } catch (IOException e) {
+                    // Removed concurrently by another node
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to expire notifications in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private Path markerFile(String key) {
+        return directory.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
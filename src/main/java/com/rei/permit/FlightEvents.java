@@ -0,0 +1,131 @@
+package com.rei.permit;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events emitted by the checker. Every event is created, timed and
+ * only populated when {@code shouldCommit()} says the recording wants it, so with the
+ * events disabled the cost is a branch and an allocation the JIT removes.
+ * The bundled {@code permit-checker.jfc} profile enables them next to the JDK's GC,
+ * lock contention and socket events.
+ */
+public final class FlightEvents {
+    private static final String CATEGORY = "Permit Checker";
+
+    private FlightEvents() {
+    }
+
+    @Name("com.rei.permit.PollCycle")
+    @Label("Poll Cycle")
+    @Description("One check cycle over the permit catalog")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class PollCycle extends Event {
+        @Label("Permits")
+        public int permits;
+
+        @Label("Failed Permits")
+        public int failures;
+
+        @Label("Alerts")
+        public int alerts;
+    }
+
+    @Name("com.rei.permit.AvailabilityRequest")
+    @Label("Availability Request")
+    @Description("A request for the availability of one permit, served from cache, a shared fetch or upstream")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class AvailabilityRequest extends Event {
+        @Label("Permit ID")
+        public String permitId;
+
+        @Label("Source")
+        public String source;
+
+        @Label("Succeeded")
+        public boolean success;
+    }
+
+    @Name("com.rei.permit.HttpCall")
+    @Label("HTTP Call")
+    @Description("One HTTP request to recreation.gov, including reading and parsing the body")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class HttpCall extends Event {
+        @Label("Permit ID")
+        public String permitId;
+
+        @Label("URL")
+        public String url;
+
+        @Label("Status Code")
+        public int statusCode;
+
+        @Label("Bytes on Wire")
+        @DataAmount
+        public long wireBytes;
+
+        @Label("Decoded Bytes")
+        @DataAmount
+        public long decodedBytes;
+
+        @Label("Hedged")
+        public boolean hedged;
+    }
+
+    @Name("com.rei.permit.JsonParse")
+    @Label("JSON Parse")
+    @Description("Parsing an availability response, measured while streaming from the socket")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class JsonParse extends Event {
+        @Label("Permit ID")
+        public String permitId;
+
+        @Label("Decoded Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("com.rei.permit.RetryAttempt")
+    @Label("Retry Attempt")
+    @Description("One attempt of an operation run with RetryUtil")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class RetryAttempt extends Event {
+        @Label("Attempt")
+        public int attempt;
+
+        @Label("Succeeded")
+        public boolean success;
+
+        @Label("Error")
+        public String error;
+
+        @Label("Backoff (ms)")
+        public long backoffMs;
+    }
+
+    @Name("com.rei.permit.SmsSend")
+    @Label("SMS Send")
+    @Description("One call to the SMS provider")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class SmsSend extends Event {
+        @Label("Succeeded")
+        public boolean success;
+
+        @Label("Status Code")
+        public int statusCode;
+
+        @Label("Message SID")
+        public String messageSid;
+    }
+}
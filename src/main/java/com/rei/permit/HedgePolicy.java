@@ -0,0 +1,40 @@
+package com.rei.permit;
+
+import java.time.Duration;
+
+/**
+ * Settings for hedged availability requests. When a request has not answered within the
+ * configured percentile of recent latencies, a second identical request is sent and the
+ * first response wins. The extra-request ratio caps hedges as a fraction of all requests
+ * so hedging cannot push us past upstream rate limits.
+ */
+public class HedgePolicy {
+    private final double percentile;
+    private final Duration minDelay;
+    private final double maxExtraRatio;
+
+    /**
+     * Creates a hedge policy.
+     *
+     * @param percentile Latency percentile (0-100) after which a hedge is sent
+     * @param minDelay Lower bound on the hedge delay, also used until enough latencies are known
+     * @param maxExtraRatio Maximum hedges as a fraction of requests, e.g. 0.05 for 5%
+     */
+    public HedgePolicy(double percentile, Duration minDelay, double maxExtraRatio) {
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxExtraRatio = maxExtraRatio;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public Duration getMinDelay() {
+        return minDelay;
+    }
+
+    public double getMaxExtraRatio() {
+        return maxExtraRatio;
+    }
+}
@@ -0,0 +1,281 @@
+package com.rei.permit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only file of recorded HTTP exchanges, written by {@link RecordingHttpClient} and
+ * served back by {@link ReplayHttpClient}. Each record is written with a single append, so
+ * a crash leaves at most one truncated record at the end, which is skipped on reading.
+ * Bodies are stored as received on the wire, still compressed when the server compressed them.
+ */
+public final class HttpCapture {
+    private static final Logger logger = LoggerFactory.getLogger(HttpCapture.class);
+    private static final int RECORD_MAGIC = 0x50435231; // "PCR1"
+
+    private HttpCapture() {
+    }
+
+    /**
+     * One recorded request and its response.
+     */
+    public static final class Exchange {
+        private final long recordedAtMillis;
+        private final int latencyMillis;
+        private final String url;
+        private final int statusCode;
+        private final String reason;
+        private final List<Header> headers;
+        private final byte[] body;
+
+        /**
+         * @param recordedAtMillis Wall-clock time the request was sent, in epoch milliseconds
+         * @param latencyMillis Time from sending the request to reading the whole body
+         * @param url The request URL
+         * @param statusCode The response status code
+         * @param reason The response reason phrase
+         * @param headers The response headers in the order received; a name may repeat
+         * @param body The response body as received, or null if there was none
+         */
+        public Exchange(long recordedAtMillis, int latencyMillis, String url, int statusCode, String reason,
+                        List<Header> headers, byte[] body) {
+            this.recordedAtMillis = recordedAtMillis;
+            this.latencyMillis = latencyMillis;
+            this.url = url;
+            this.statusCode = statusCode;
+            this.reason = reason == null ? "" : reason;
+            this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+            this.body = body;
+        }
+
+        public long getRecordedAtMillis() {
+            return recordedAtMillis;
+        }
+
+        public int getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public List<Header> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Returns the value of the first header with the given name, ignoring case, or null.
+         */
+        public String getHeaderValue(String name) {
+            return header(headers, name);
+        }
+
+        /**
+         * Builds a fresh response carrying this exchange's status, headers and body.
+         */
+        CloseableHttpResponse toResponse() {
+            BufferedResponse response = new BufferedResponse(statusCode, reason);
+            headers.forEach(response::addHeader);
+            if (body != null) {
+                ByteArrayEntity entity = new ByteArrayEntity(body);
+                entity.setContentType(header(headers, "Content-Type"));
+                entity.setContentEncoding(header(headers, "Content-Encoding"));
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (body == null ? 0 : body.length));
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(RECORD_MAGIC);
+            out.writeLong(recordedAtMillis);
+            out.writeInt(latencyMillis);
+            out.writeUTF(url);
+            out.writeShort(statusCode);
+            out.writeUTF(reason);
+            out.writeShort(headers.size());
+            for (Header header : headers) {
+                out.writeUTF(header.getName());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(body == null ? -1 : body.length);
+            if (body != null) {
+                out.write(body);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static Exchange decode(DataInputStream in) throws IOException {
+            int magic = in.readInt();
+            if (magic != RECORD_MAGIC) {
+                throw new IOException("Not a capture record");
+            }
+            long recordedAtMillis = in.readLong();
+            int latencyMillis = in.readInt();
+            String url = in.readUTF();
+            int statusCode = in.readUnsignedShort();
+            String reason = in.readUTF();
+            int headerCount = in.readUnsignedShort();
+            List<Header> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new BasicHeader(in.readUTF(), in.readUTF()));
+            }
+            int length = in.readInt();
+            byte[] body = null;
+            if (length >= 0) {
+                body = new byte[length];
+                in.readFully(body);
+            }
+            return new Exchange(recordedAtMillis, latencyMillis, url, statusCode, reason, headers, body);
+        }
+    }
+
+    /**
+     * Copies the parts of a response worth replaying into an exchange.
+     *
+     * @param recordedAtMillis Wall-clock time the request was sent
+     * @param latencyMillis Time to the whole body
+     * @param url The request URL
+     * @param response The response
+     * @param body The response body as received, or null
+     * @return The exchange
+     */
+    static Exchange capture(long recordedAtMillis, int latencyMillis, String url,
+                            CloseableHttpResponse response, byte[] body) {
+        List<Header> headers = new ArrayList<>(Arrays.asList(response.getAllHeaders()));
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentEncoding() != null && header(headers, "Content-Encoding") == null) {
+            headers.add(entity.getContentEncoding());
+        }
+        if (entity != null && entity.getContentType() != null && header(headers, "Content-Type") == null) {
+            headers.add(entity.getContentType());
+        }
+        return new Exchange(recordedAtMillis, latencyMillis, url, response.getStatusLine().getStatusCode(),
+            response.getStatusLine().getReasonPhrase(), headers, body);
+    }
+
+    /**
+     * Returns the full URL of a request, the key exchanges are recorded and replayed under.
+     */
+    static String urlOf(HttpHost target, HttpRequest request) {
+        if (request instanceof HttpUriRequest && ((HttpUriRequest) request).getURI().isAbsolute()) {
+            return ((HttpUriRequest) request).getURI().toString();
+        }
+        String uri = request.getRequestLine().getUri();
+        return target == null ? uri : target.toURI() + uri;
+    }
+
+    private static String header(List<Header> headers, String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends exchanges to a capture file. Safe for concurrent use.
+     */
+    public static final class Writer implements Closeable {
+        private final FileOutputStream out;
+
+        /**
+         * Opens a capture file for appending, creating it and its directory if needed.
+         *
+         * @param file The capture file
+         * @throws IOException if the file cannot be opened
+         */
+        public Writer(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.out = new FileOutputStream(file.toFile(), true);
+        }
+
+        /**
+         * Appends one exchange with a single write.
+         */
+        public synchronized void append(Exchange exchange) throws IOException {
+            out.write(exchange.encode());
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads every complete exchange of a capture file, in the order they were appended.
+     *
+     * @param file The capture file
+     * @return The exchanges
+     * @throws IOException if the file cannot be read or is not a capture file
+     */
+    public static List<Exchange> read(Path file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                in.mark(4);
+                if (in.read() < 0) {
+                    break;
+                }
+                in.reset();
+                try {
+                    exchanges.add(Exchange.decode(in));
+                } catch (EOFException e) {
+                    logger.warn("Ignoring truncated record at the end of {}", file);
+                    break;
+                }
+            }
+        }
+        return exchanges;
+    }
+
+    private static class BufferedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+        BufferedResponse(int statusCode, String reason) {
+            super(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, reason));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
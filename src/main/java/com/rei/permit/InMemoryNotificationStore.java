@@ -0,0 +1,29 @@
+package com.rei.permit;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Notification store that keeps keys in memory for the lifetime of the process.
+ */
+public class InMemoryNotificationStore implements NotificationStore {
+    private final Map<String, Instant> notified = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean markNotified(String key) {
+        return notified.putIfAbsent(key, Instant.now()) == null;
+    }
+
+    @Override
+    public boolean clear(String key) {
+        return notified.remove(key) != null;
+    }
+
+    @Override
+    public void expire(Duration ttl) {
+        Instant cutoff = Instant.now().minus(ttl);
+        notified.values().removeIf(notifiedAt -> notifiedAt.isBefore(cutoff));
+    }
+}
@@ -0,0 +1,50 @@
+package com.rei.permit;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples and answers percentile queries over them.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    /**
+     * Creates a tracker that remembers the given number of recent samples.
+     *
+     * @param capacity Number of samples kept
+     */
+    public LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * Returns the latency at the given percentile of the recent samples.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return The latency in milliseconds, or -1 if there are no samples
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,33 @@
+package com.rei.permit;
+
+import java.time.Duration;
+
+/**
+ * Remembers which permit/date combinations have already been notified,
+ * so each opening is only alerted once.
+ */
+public interface NotificationStore {
+
+    /**
+     * Atomically records a notification key.
+     *
+     * @param key The notification key
+     * @return true if the key was not recorded before and the caller should notify
+     */
+    boolean markNotified(String key);
+
+    /**
+     * Forgets a notification key, e.g. once the permit is no longer available.
+     *
+     * @param key The notification key
+     * @return true if the key was recorded
+     */
+    boolean clear(String key);
+
+    /**
+     * Forgets all keys recorded longer ago than the given time to live.
+     *
+     * @param ttl How long a notification key is remembered
+     */
+    void expire(Duration ttl);
+}
@@ -0,0 +1,31 @@
+package com.rei.permit;
+
+/**
+ * Delivers permit availability alerts to a user.
+ */
+public interface Notifier {
+
+    /**
+     * Sends a notification that a permit has become available.
+     * Implementations must not throw; delivery failures are logged.
+     *
+     * @param permit The permit that is available
+     * @param availability The availability that triggered the notification
+     * @param message The message to deliver
+     */
+    void notifyPermitAvailable(Permit permit, PermitAvailability availability, String message);
+
+    /**
+     * Sends a notification and completes its trace once the message is handed to the provider.
+     * The default implementation delivers without tracing.
+     *
+     * @param permit The permit that is available
+     * @param availability The availability that triggered the notification
+     * @param message The message to deliver
+     * @param trace The trace of the alert
+     */
+    default void notifyPermitAvailable(Permit permit, PermitAvailability availability, String message,
+                                       AlertTrace trace) {
+        notifyPermitAvailable(permit, availability, message);
+    }
+}
@@ -1,7 +1,9 @@
 package com.rei.permit;
 
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -11,7 +13,8 @@ public class Permit {
     private final String id;
     private final String name;
     private final String url;
-    private final Set<LocalDate> targetDates;
+    private final DateTargets targets;
+    private final Set<String> divisions;
 
     /**
      * Creates a new Permit with the specified details and target dates.
@@ -25,39 +28,52 @@ public class Permit {
         this.id = id;
         this.name = name;
         this.url = url;
-        this.targetDates = new HashSet<>(targetDates);
+        this.targets = DateTargets.of(targetDates);
+        this.divisions = Collections.emptySet();
     }
 
     /**
-     * Creates a new Permit with the specified details and target dates string.
-     * The dates string should be comma-separated dates in YYYY-MM-DD format.
+     * Creates a new Permit with the specified details and target expression.
+     * The simplest expression is comma-separated dates in YYYY-MM-DD format;
+     * see {@link DateTargets} for ranges, weekdays, exclusions and multi-night itineraries.
      *
      * @param id The permit ID
      * @param name The permit name
      * @param url The permit URL
-     * @param datesConfig Comma-separated dates in YYYY-MM-DD format
+     * @param datesConfig Target expression, e.g. comma-separated dates in YYYY-MM-DD format
      */
     public Permit(String id, String name, String url, String datesConfig) {
+        this(id, name, url, datesConfig, null);
+    }
+
+    /**
+     * Creates a new Permit that only watches some divisions (zones or entry points).
+     *
+     * @param id The permit ID
+     * @param name The permit name
+     * @param url The permit URL
+     * @param datesConfig Target expression, e.g. comma-separated dates in YYYY-MM-DD format
+     * @param divisionsConfig Comma-separated division IDs, or null/blank for every division
+     */
+    public Permit(String id, String name, String url, String datesConfig, String divisionsConfig) {
         this.id = id;
         this.name = name;
         this.url = url;
-        this.targetDates = parseDates(datesConfig);
+        this.targets = DateTargets.parse(datesConfig);
+        this.divisions = parseDivisions(divisionsConfig);
     }
 
-    private Set<LocalDate> parseDates(String datesConfig) {
-        Set<LocalDate> dates = new HashSet<>();
-        if (datesConfig != null && !datesConfig.trim().isEmpty()) {
-            String[] dateStrings = datesConfig.split(",");
-            for (String dateStr : dateStrings) {
-                try {
-                    dates.add(LocalDate.parse(dateStr.trim()));
-                } catch (Exception e) {
-                    // Log error and continue with other dates
-                    System.err.println("Error parsing date: " + dateStr);
-                }
+    private static Set<String> parseDivisions(String divisionsConfig) {
+        if (divisionsConfig == null || divisionsConfig.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> divisions = new LinkedHashSet<>();
+        for (String division : divisionsConfig.split(",")) {
+            if (!division.trim().isEmpty()) {
+                divisions.add(division.trim());
             }
         }
-        return dates;
+        return Collections.unmodifiableSet(divisions);
     }
 
     public String getId() {
@@ -73,10 +89,31 @@ public class Permit {
     }
 
     public Set<LocalDate> getTargetDates() {
-        return new HashSet<>(targetDates);
+        return new HashSet<>(targets.toDates());
+    }
+
+    public DateTargets getTargets() {
+        return targets;
+    }
+
+    /**
+     * Returns the watched divisions; an empty set means every division.
+     */
+    public Set<String> getDivisions() {
+        return divisions;
     }
 
     public boolean hasTargetDates() {
-        return !targetDates.isEmpty();
+        return !targets.isEmpty();
+    }
+
+    /**
+     * Whether another permit watches the same dates and divisions as this one.
+     *
+     * @param other The permit to compare with
+     * @return true if both would match the same availability
+     */
+    public boolean hasSameTargets(Permit other) {
+        return id.equals(other.id) && targets.equals(other.targets) && divisions.equals(other.divisions);
     }
 } 
\ No newline at end of file
@@ -1,14 +1,46 @@
 package com.rei.permit;
 
+import java.util.Objects;
+
 public class PermitAvailability {
     private final boolean available;
     private final String availableDate;
     private final int remainingPermits;
+    private final int nights;
+    private final String division;
 
     public PermitAvailability(boolean available, String availableDate, int remainingPermits) {
+        this(available, availableDate, remainingPermits, 1);
+    }
+
+    /**
+     * Creates an availability for a multi-night itinerary.
+     *
+     * @param available Whether the itinerary is available
+     * @param availableDate First night of the itinerary
+     * @param remainingPermits Fewest permits remaining on any night of the itinerary
+     * @param nights Number of consecutive nights
+     */
+    public PermitAvailability(boolean available, String availableDate, int remainingPermits, int nights) {
+        this(available, availableDate, remainingPermits, nights, AvailabilityIndex.DEFAULT_DIVISION);
+    }
+
+    /**
+     * Creates an availability for a multi-night itinerary in one division of a permit.
+     *
+     * @param available Whether the itinerary is available
+     * @param availableDate First night of the itinerary
+     * @param remainingPermits Fewest permits remaining on any night of the itinerary
+     * @param nights Number of consecutive nights
+     * @param division The division (zone or entry point), or an empty string for the whole permit
+     */
+    public PermitAvailability(boolean available, String availableDate, int remainingPermits, int nights,
+                              String division) {
         this.available = available;
         this.availableDate = availableDate;
         this.remainingPermits = remainingPermits;
+        this.nights = nights;
+        this.division = division;
     }
 
     public boolean isAvailable() {
@@ -22,4 +54,37 @@ public class PermitAvailability {
     public int getRemainingPermits() {
         return remainingPermits;
     }
-} 
\ No newline at end of file
+
+    public int getNights() {
+        return nights;
+    }
+
+    public String getDivision() {
+        return division;
+    }
+
+    public boolean hasDivision() {
+        return division != null && !division.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PermitAvailability)) {
+            return false;
+        }
+        PermitAvailability other = (PermitAvailability) o;
+        return available == other.available
+            && remainingPermits == other.remainingPermits
+            && nights == other.nights
+            && Objects.equals(availableDate, other.availableDate)
+            && Objects.equals(division, other.division);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(available, availableDate, remainingPermits, nights, division);
+    }
+}
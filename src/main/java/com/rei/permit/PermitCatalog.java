@@ -0,0 +1,83 @@
+package com.rei.permit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * The set of permits a checker watches.
+ * Permits are configured as {@code permit.<key>.id}, {@code permit.<key>.name},
+ * {@code permit.<key>.url}, {@code permit.<key>.dates} and optionally
+ * {@code permit.<key>.divisions} properties.
+ */
+public class PermitCatalog {
+    private static final String PREFIX = "permit.";
+    private static final String ID_SUFFIX = ".id";
+
+    private volatile List<Permit> permits;
+
+    /**
+     * Creates a catalog with the given permits.
+     *
+     * @param permits The permits to watch
+     */
+    public PermitCatalog(List<Permit> permits) {
+        this.permits = Collections.unmodifiableList(new ArrayList<>(permits));
+    }
+
+    /**
+     * Builds a catalog from every {@code permit.<key>.id} entry in the application configuration.
+     *
+     * @return The configured catalog
+     */
+    public static PermitCatalog fromConfig() {
+        return fromProperties(Config.getProperties());
+    }
+
+    /**
+     * Builds a catalog from every {@code permit.<key>.id} entry in the given properties,
+     * ordered by key.
+     *
+     * @param properties The properties to read
+     * @return The catalog
+     */
+    public static PermitCatalog fromProperties(Properties properties) {
+        TreeSet<String> keys = new TreeSet<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(PREFIX) && name.endsWith(ID_SUFFIX)) {
+                keys.add(name.substring(PREFIX.length(), name.length() - ID_SUFFIX.length()));
+            }
+        }
+
+        List<Permit> permits = new ArrayList<>();
+        for (String key : keys) {
+            String prefix = PREFIX + key + ".";
+            permits.add(new Permit(
+                properties.getProperty(prefix + "id").trim(),
+                properties.getProperty(prefix + "name"),
+                properties.getProperty(prefix + "url"),
+                properties.getProperty(prefix + "dates"),
+                properties.getProperty(prefix + "divisions")));
+        }
+        return new PermitCatalog(permits);
+    }
+
+    /**
+     * Replaces the watched permits. Readers see either the old or the new list, never a mix.
+     *
+     * @param updated The permits to watch from now on
+     */
+    public void setPermits(List<Permit> updated) {
+        this.permits = Collections.unmodifiableList(new ArrayList<>(updated));
+    }
+
+    public List<Permit> getPermits() {
+        return permits;
+    }
+
+    public int size() {
+        return permits.size();
+    }
+}
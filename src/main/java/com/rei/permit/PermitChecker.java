@@ -1,197 +1,840 @@
 package com.rei.permit;
 
+import ch.qos.logback.classic.LoggerContext;
 import com.fasterxml.jackson.databind.JsonNode;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Polls a catalog of permits and notifies when one of them becomes available.
+ * Each instance is an independent engine with its own catalog, notification store
+ * and notifier, so several checkers can share one JVM, one HTTP client and one scheduler.
+ */
 public class PermitChecker {
     private static final Logger logger = LoggerFactory.getLogger(PermitChecker.class);
-    private static RecreationGovClient apiClient = new RecreationGovClient();
-    
-    // Permit IDs for Enchantments and Mount Whitney
-    private static final List<Permit> PERMITS = Arrays.asList(
-        new Permit(
-            Config.getProperty("permit.enchatments.id"),
-            Config.getProperty("permit.enchatments.name"),
-            Config.getProperty("permit.enchatments.url"),
-            Config.getProperty("permit.enchatments.dates")
-        ),
-        new Permit(
-            Config.getProperty("permit.whitney.id"),
-            Config.getProperty("permit.whitney.name"),
-            Config.getProperty("permit.whitney.url"),
-            Config.getProperty("permit.whitney.dates")
-        )
-    );
-
-    // Keep track of notified dates with their timestamps
-    private static final Map<String, LocalDateTime> notifiedDates = new HashMap<>();
-    private static final int NOTIFICATION_TTL_HOURS = 24; // Notifications expire after 24 hours
-
-    // Test-only hook to inject a mock client
-    static void setApiClientForTesting(RecreationGovClient client) {
-        apiClient = client;
+    private static final Duration NOTIFICATION_TTL = Duration.ofHours(24); // Notifications expire after 24 hours
+    private static final int SLOWEST_ALERTS_KEPT = 10;
+    private static final Duration SLOW_ALERT_THRESHOLD = Duration.ofSeconds(30);
+    private static final long CONFIG_SETTLE_MILLIS = 200;
+
+    /** Exit status of a single-shot run: every permit was checked and every alert sent. */
+    public static final int EXIT_OK = 0;
+    /** Exit status of a single-shot run: configuration, SMS or state could not be set up. */
+    public static final int EXIT_STARTUP_FAILED = 1;
+    /** Exit status of a single-shot run: the availability of some permits could not be checked. */
+    public static final int EXIT_CHECK_FAILED = 2;
+    /** Exit status of a single-shot run: some alerts were not sent before the drain timeout. */
+    public static final int EXIT_UNDELIVERED = 3;
+
+    private final RecreationGovClient apiClient;
+    private final PermitCatalog catalog;
+    private final NotificationStore notificationStore;
+    private final Notifier notifier;
+    private final ShardCoordinator shardCoordinator;
+    private final Map<Permit, Set<String>> openKeysByPermit = new ConcurrentHashMap<>();
+    private final Map<String, JsonNode> lastAvailability = new ConcurrentHashMap<>();
+    private final AvailabilityBoard availabilityBoard = new AvailabilityBoard();
+    private final AlertTracer alertTracer = new AlertTracer(SLOWEST_ALERTS_KEPT, SLOW_ALERT_THRESHOLD);
+    // Results are evaluated under the read lock and catalogs swapped under the write lock,
+    // so a cycle never records a permit the catalog no longer holds
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private volatile Set<Permit> watchedPermits;
+    private volatile Duration notificationTtl = NOTIFICATION_TTL;
+
+    /**
+     * Creates a new PermitChecker.
+     *
+     * @param apiClient The client used to fetch availability; may be shared between checkers
+     * @param catalog The permits to watch
+     * @param notificationStore Keeps track of notified dates with their timestamps
+     * @param notifier Delivers availability alerts
+     */
+    public PermitChecker(RecreationGovClient apiClient, PermitCatalog catalog,
+                         NotificationStore notificationStore, Notifier notifier) {
+        this(apiClient, catalog, notificationStore, notifier, null);
+    }
+
+    /**
+     * Creates a new PermitChecker that polls only the permits its node owns.
+     *
+     * @param apiClient The client used to fetch availability; may be shared between checkers
+     * @param catalog The permits to watch
+     * @param notificationStore Keeps track of notified dates; must be shared between nodes
+     * @param notifier Delivers availability alerts
+     * @param shardCoordinator Decides which permits this node polls, or null to poll all of them
+     */
+    public PermitChecker(RecreationGovClient apiClient, PermitCatalog catalog,
+                         NotificationStore notificationStore, Notifier notifier,
+                         ShardCoordinator shardCoordinator) {
+        this.apiClient = apiClient;
+        this.catalog = catalog;
+        this.notificationStore = notificationStore;
+        this.notifier = notifier;
+        this.shardCoordinator = shardCoordinator;
+        this.watchedPermits = new HashSet<>(catalog.getPermits());
+        scopeDates(catalog.getPermits(), Collections.emptySet());
+    }
+
+    /**
+     * Tells the client which dates this checker watches for each permit ID, so fetches
+     * cover exactly the current targets, and withdraws the IDs no longer watched.
+     */
+    private void scopeDates(List<Permit> permits, Set<String> droppedIds) {
+        Map<String, Set<LocalDate>> datesById = new HashMap<>();
+        Set<String> wholeSeason = new HashSet<>();
+        for (Permit permit : permits) {
+            Set<LocalDate> dates = permit.getTargetDates();
+            if (dates.isEmpty()) {
+                wholeSeason.add(permit.getId());
+            }
+            datesById.computeIfAbsent(permit.getId(), id -> new HashSet<>()).addAll(dates);
+        }
+        for (Map.Entry<String, Set<LocalDate>> entry : datesById.entrySet()) {
+            Set<LocalDate> dates = wholeSeason.contains(entry.getKey()) ? Collections.emptySet() : entry.getValue();
+            apiClient.setDateScope(this, entry.getKey(), dates);
+        }
+        for (String permitId : droppedIds) {
+            apiClient.removeDateScope(this, permitId);
+        }
     }
 
     public static void main(String[] args) {
-        logger.info("Starting Permit Status Checker");
-        
+        boolean once = Arrays.asList(args).contains("--once");
+        int status = run(once);
+        // A running scheduler keeps the JVM alive until the shutdown hook stops it
+        if (once || status != EXIT_OK) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Starts the checker. In single-shot mode it runs one cycle, waits for the alerts to
+     * be sent and returns; otherwise it starts the scheduler, whose threads keep the JVM
+     * running, and returns right away.
+     *
+     * @param once Whether to run a single cycle
+     * @return The process exit status; in scheduled mode, {@code EXIT_OK} once started
+     */
+    private static int run(boolean once) {
+        logger.info("Starting Permit Status Checker{}", once ? " for a single check" : "");
+        if (Config.isJfrEnabled()) {
+            startFlightRecording();
+        }
+        String captureMode = Config.getApiCaptureMode();
+        if (captureMode.equals("replay")) {
+            // Replayed availability is not real; never text anyone about it
+            System.setProperty("sms.test.mode", "true");
+        }
+
+        SmsNotificationService notifier = new SmsNotificationService();
         try {
             // Initialize SMS notification service
-            SmsNotificationService.initialize();
+            notifier.initialize();
             logger.info("SMS notification service initialized successfully");
         } catch (Exception e) {
             logger.error("Failed to initialize SMS notification service", e);
-            return;
+            return EXIT_STARTUP_FAILED;
+        }
+
+        RecreationGovClient apiClient;
+        double replaySpeed = 1;
+        Duration timeout = Duration.ofSeconds(10);
+        try {
+            if (captureMode.equals("record")) {
+                apiClient = RecreationGovClient.recording(Paths.get(Config.getApiCaptureFile()), 3, timeout,
+                    Config.getApiMaxConnections());
+            } else if (captureMode.equals("replay")) {
+                replaySpeed = Config.getApiReplaySpeed();
+                apiClient = RecreationGovClient.replaying(Paths.get(Config.getApiCaptureFile()), replaySpeed, 3,
+                    timeout, Config.getApiMaxConnections());
+            } else {
+                apiClient = new RecreationGovClient(3, timeout, Config.getApiMaxConnections());
+            }
+        } catch (IOException e) {
+            logger.error("Failed to open capture file {}", Config.getApiCaptureFile(), e);
+            return EXIT_STARTUP_FAILED;
+        }
+        // A replay runs every duration faster by the same factor, or caching and pacing would
+        // hide the recorded changes and throttle playback
+        apiClient.setResultCacheTtl(scaled(Duration.ofSeconds(Config.getApiCacheTtlSeconds()), replaySpeed));
+        apiClient.setRequestInterval(scaled(Duration.ofMillis(Config.getApiRequestIntervalMillis()), replaySpeed));
+        HedgePolicy hedgePolicy = Config.getApiHedgePolicy();
+        if (hedgePolicy != null) {
+            hedgePolicy = new HedgePolicy(hedgePolicy.getPercentile(),
+                scaled(hedgePolicy.getMinDelay(), replaySpeed), hedgePolicy.getMaxExtraRatio());
         }
-        
-        // Create a scheduler that runs at configured interval
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(() -> {
+        apiClient.setHedgePolicy(hedgePolicy);
+        apiClient.setMaxBodyBytes(Config.getApiMaxBodyBytes());
+        NotificationStore notificationStore = new InMemoryNotificationStore();
+        ShardCoordinator shardCoordinator = null;
+        String clusterDir = Config.getClusterDirectory();
+        if (clusterDir != null && !clusterDir.trim().isEmpty()) {
             try {
-                checkAllPermits();
-            } catch (Exception e) {
-                logger.error("Error checking permit availability", e);
+                Path clusterPath = Paths.get(clusterDir.trim());
+                notificationStore = new FileNotificationStore(clusterPath.resolve("notified"));
+                shardCoordinator = new ShardCoordinator(clusterPath.resolve("members"),
+                    Config.getClusterNodeId(), Duration.ofSeconds(Config.getClusterLeaseTtlSeconds()));
+                shardCoordinator.start();
+            } catch (IOException e) {
+                logger.error("Failed to join cluster at {}", clusterDir, e);
+                return EXIT_STARTUP_FAILED;
             }
-        }, 0, Config.getCheckIntervalMinutes(), TimeUnit.MINUTES);
+        } else if (once) {
+            // Nothing survives between single-shot runs unless it is on disk
+            try {
+                notificationStore = new FileNotificationStore(Paths.get(Config.getStateDirectory(), "notified"));
+            } catch (IOException e) {
+                logger.error("Failed to open notification state at {}", Config.getStateDirectory(), e);
+                return EXIT_STARTUP_FAILED;
+            }
+        }
+        PermitChecker checker = new PermitChecker(
+            apiClient, PermitCatalog.fromConfig(), notificationStore, notifier, shardCoordinator);
+        checker.setNotificationTtl(scaled(NOTIFICATION_TTL, replaySpeed));
+        Duration drainTimeout = Duration.ofSeconds(Config.getShutdownDrainTimeoutSeconds());
+
+        if (once) {
+            logStartupTime("once");
+            Path openKeysFile = Paths.get(Config.getStateDirectory(), "open-keys");
+            checker.loadOpenKeys(openKeysFile);
+            boolean checked = checker.checkAllPermits();
+            checker.saveOpenKeys(openKeysFile);
+            boolean delivered = notifier.shutdown(drainTimeout);
+            if (shardCoordinator != null) {
+                shardCoordinator.stop();
+            }
+            apiClient.close();
+            int status = !checked ? EXIT_CHECK_FAILED : !delivered ? EXIT_UNDELIVERED : EXIT_OK;
+            logger.atInfo().setMessage("Single check finished")
+                .addKeyValue("status", status)
+                .addKeyValue("totalMs", ManagementFactory.getRuntimeMXBean().getUptime())
+                .log();
+            stopLogging();
+            return status;
+        }
+
+        AvailabilityApiServer apiServer = null;
+        if (Config.getQueryServerPort() > 0) {
+            try {
+                AvailabilityEventStream events = new AvailabilityEventStream(Config.getQueryEventsHistory(),
+                    Config.getQueryEventsBuffer(), Config.getQueryEventsMaxSubscribers());
+                apiServer = new AvailabilityApiServer(checker.getAvailabilityBoard(), events,
+                    new InetSocketAddress(Config.getQueryServerPort()), Config.getQueryServerThreads());
+                apiServer.start();
+            } catch (IOException e) {
+                logger.error("Failed to start availability API on port {}", Config.getQueryServerPort(), e);
+                return EXIT_STARTUP_FAILED;
+            }
+        }
+
+        // Create a scheduler that runs at configured interval, sped up along with a replay
+        Duration interval = Duration.ofMinutes(Config.getCheckIntervalMinutes());
+        CycleScheduler scheduler = new CycleScheduler(
+            "permit-checker",
+            checker::checkAllPermits,
+            scaled(interval, replaySpeed),
+            Config.getCycleOverrunPolicy());
+
+        // Pick up edits to the permits in the external config file without a restart
+        ConfigFileWatcher configWatcher = null;
+        if (Config.getConfigFile() != null) {
+            configWatcher = new ConfigFileWatcher(Config.getConfigFile(), Duration.ofMillis(CONFIG_SETTLE_MILLIS), () -> {
+                try {
+                    Config.reload();
+                } catch (IOException e) {
+                    logger.warn("Failed to reload {}: {}", Config.getConfigFile(), e.getMessage());
+                    return;
+                }
+                checker.updateCatalog(PermitCatalog.fromConfig().getPermits());
+            });
+            try {
+                configWatcher.start();
+            } catch (IOException e) {
+                logger.error("Failed to watch {}", Config.getConfigFile(), e);
+                return EXIT_STARTUP_FAILED;
+            }
+        }
+
+        // Let the in-flight cycle (and the notifications it sends) finish before the JVM exits
+        ShardCoordinator coordinator = shardCoordinator;
+        ConfigFileWatcher watcher = configWatcher;
+        AvailabilityApiServer server = apiServer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            logger.info("Shutting down Permit Status Checker");
+            if (watcher != null) {
+                watcher.stop();
+            }
+            scheduler.stop(drainTimeout);
+            notifier.shutdown(drainTimeout);
+            if (server != null) {
+                server.stop();
+            }
+            if (coordinator != null) {
+                coordinator.stop();
+            }
+            apiClient.close();
+            stopLogging();
+        }, "permit-checker-shutdown"));
+
+        logStartupTime("scheduled");
+        scheduler.start();
+        return EXIT_OK;
     }
 
-    private static void checkAllPermits() {
-        // Clean up expired notifications first
-        cleanupExpiredNotifications();
-        
-        for (Permit permit : PERMITS) {
+    private static Duration scaled(Duration duration, double speed) {
+        return Duration.ofNanos((long) (duration.toNanos() / speed));
+    }
+
+    /**
+     * Logs how long the JVM took to get ready for the first cycle, and whether it started
+     * from a class data sharing archive, so startup can be tracked across releases. With
+     * {@code startup.record.file} set the same figures are appended to that CSV file as
+     * {@code recordedAt,mode,startupMs,sharedArchive}.
+     */
+    private static void logStartupTime(String mode) {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        long startupMs = runtime.getUptime();
+        boolean sharedArchive = runtime.getInputArguments().stream()
+            .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile"));
+        logger.atInfo().setMessage("Startup complete")
+            .addKeyValue("mode", mode)
+            .addKeyValue("startupMs", startupMs)
+            .addKeyValue("sharedArchive", sharedArchive)
+            .log();
+        Path recordFile = Config.getStartupRecordFile();
+        if (recordFile != null) {
+            String line = Instant.now() + "," + mode + "," + startupMs + "," + sharedArchive + System.lineSeparator();
             try {
-                checkPermitAvailability(permit);
-                // Add a small delay between requests to avoid overwhelming the API
-                Thread.sleep(1000);
-            } catch (Exception e) {
-                logger.error("Error checking permit {}: {}", permit.getName(), e.getMessage());
+                Path parent = recordFile.toAbsolutePath().getParent();
+                Files.createDirectories(parent);
+                Files.write(recordFile, line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                logger.warn("Failed to record startup time in {}: {}", recordFile, e.getMessage());
             }
         }
     }
 
-    private static void cleanupExpiredNotifications() {
-        LocalDateTime now = LocalDateTime.now();
-        notifiedDates.entrySet().removeIf(entry -> 
-            entry.getValue().plusHours(NOTIFICATION_TTL_HOURS).isBefore(now));
+    /**
+     * Flushes what the async appenders still hold; nothing is logged after this.
+     */
+    private static void stopLogging() {
+        if (LoggerFactory.getILoggerFactory() instanceof LoggerContext) {
+            ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        }
     }
 
     /**
-     * Checks the availability of a specific permit and sends notifications if available.
+     * Starts a continuous flight recording with the bundled profile. It keeps a rolling
+     * window of events on disk and is dumped to the configured file when the JVM exits.
+     */
+    private static void startFlightRecording() {
+        try (Reader profile = new InputStreamReader(
+            PermitChecker.class.getResourceAsStream("/permit-checker.jfc"), StandardCharsets.UTF_8)) {
+            Recording recording = new Recording(Configuration.create(profile));
+            recording.setName("permit-checker");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofMinutes(Config.getJfrMaxAgeMinutes()));
+            recording.setDestination(Paths.get(Config.getJfrDestination()));
+            recording.setDumpOnExit(true);
+            recording.start();
+            logger.info("Flight recording started, dumped to {} on exit", Config.getJfrDestination());
+        } catch (Exception e) {
+            logger.warn("Failed to start flight recording: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Restores the dates a previous run saw open, so a date that closed since then is
+     * cleared from the notification store and alerted again when it reopens. Without this a
+     * single-shot run would only forget a notified date once its notification expired.
+     * A missing file is treated as a first run.
      *
-     * @param permit The permit to check
-     * @throws IOException if there's an error communicating with the API
+     * @param file The file written by {@link #saveOpenKeys(Path)}
      */
-    public static void checkPermitAvailability(Permit permit) throws IOException {
+    public void loadOpenKeys(Path file) {
+        Map<String, Permit> permitsByKey = new HashMap<>();
+        for (Permit permit : catalog.getPermits()) {
+            permitsByKey.put(permit.getId() + "|" + permit.getName(), permit);
+        }
         try {
-            JsonNode jsonNode = apiClient.getPermitAvailability(permit.getId());
-
-            // Log the current time and availability status
-            String currentTime = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            logger.info("Checking {} permit availability at: {}", permit.getName(), currentTime);
-
-            // Check if permits are available
-            PermitAvailability availability = checkAvailability(jsonNode, permit);
-            if (availability.isAvailable() && isTargetDate(permit, availability.getAvailableDate())) {
-                String notificationKey = permit.getId() + "_" + availability.getAvailableDate();
-                
-                // Only send notification if we haven't notified about this date before
-                if (!notifiedDates.containsKey(notificationKey)) {
-                    String message = String.format("%s permit is available for date: %s with %d permits remaining!",
-                        permit.getName(),
-                        availability.getAvailableDate(),
-                        availability.getRemainingPermits());
-                    
-                    logger.info(message);
-                    SmsNotificationService.sendPermitAvailableNotification(permit.getId(), message);
-                    notifiedDates.put(notificationKey, LocalDateTime.now());
-                } else {
-                    logger.info("Already notified about {} permit for date {}", 
-                        permit.getName(), availability.getAvailableDate());
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                Permit permit = tab < 0 ? null : permitsByKey.get(line.substring(0, tab));
+                if (permit == null) {
+                    continue;
                 }
-            } else if (!availability.isAvailable()) {
-                // If permits are no longer available, remove from notified dates
-                String notificationKey = permit.getId() + "_" + availability.getAvailableDate();
-                if (notifiedDates.remove(notificationKey) != null) {
-                    logger.info("Removed {} permit for date {} from notified dates as it's no longer available",
-                        permit.getName(), availability.getAvailableDate());
+                Set<String> openKeys = new HashSet<>();
+                for (String key : line.substring(tab + 1).split(",")) {
+                    if (!key.isEmpty()) {
+                        openKeys.add(key);
+                    }
                 }
+                openKeysByPermit.put(permit, openKeys);
             }
+        } catch (NoSuchFileException e) {
+            // First run
         } catch (IOException e) {
-            logger.error("Error making API request for {}: {}", permit.getName(), e.getMessage());
-            throw e;
+            logger.warn("Failed to read open dates from {}: {}", file, e.getMessage());
         }
     }
 
-    private static boolean isTargetDate(Permit permit, String availableDate) {
-        if (!permit.hasTargetDates()) {
-            return true; // If no specific dates are configured, notify for any available date
+    /**
+     * Writes the dates currently seen open, one line per permit, replacing the file atomically.
+     *
+     * @param file The file to write
+     */
+    public void saveOpenKeys(Path file) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Permit, Set<String>> entry : openKeysByPermit.entrySet()) {
+            Permit permit = entry.getKey();
+            lines.add(permit.getId() + "|" + permit.getName() + "\t" + String.join(",", entry.getValue()));
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "open-keys", ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to save open dates to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Sets how long a notified date is remembered before it may be alerted again.
+     * Defaults to 24 hours.
+     *
+     * @param ttl Time to live of notification keys
+     */
+    public void setNotificationTtl(Duration ttl) {
+        this.notificationTtl = ttl;
+    }
+
+    /**
+     * Returns the board holding the latest availability this checker has seen.
+     */
+    public AvailabilityBoard getAvailabilityBoard() {
+        return availabilityBoard;
+    }
+
+    /**
+     * Returns the tracer that measures alert latency from fetch to SMS delivery.
+     */
+    public AlertTracer getAlertTracer() {
+        return alertTracer;
+    }
+
+    /**
+     * Runs one check cycle over every permit in the catalog.
+     *
+     * @return true if the availability of every permit was checked
+     */
+    public boolean checkAllPermits() {
+        FlightEvents.PollCycle cycleEvent = new FlightEvents.PollCycle();
+        cycleEvent.begin();
+        // Clean up expired notifications first
+        notificationStore.expire(notificationTtl);
+        if (shardCoordinator != null) {
+            shardCoordinator.refresh();
+        }
+
+        Map<String, List<Permit>> permitsById = new LinkedHashMap<>();
+        for (Permit permit : catalog.getPermits()) {
+            if (shardCoordinator != null && !shardCoordinator.owns(permit.getId())) {
+                continue;
+            }
+            permitsById.computeIfAbsent(permit.getId(), id -> new ArrayList<>()).add(permit);
         }
 
+        // Submit the whole cycle at once and evaluate each permit as its result arrives
+        long startNanos = System.nanoTime();
+        CycleCounts counts = new CycleCounts();
+        CompletableFuture<Void> cycle = apiClient.getPermitAvailability(permitsById.keySet(),
+            result -> handleResult(permitsById.get(result.getPermitId()), result, counts));
         try {
-            LocalDate date = LocalDate.parse(availableDate);
-            return permit.getTargetDates().contains(date);
-        } catch (Exception e) {
-            logger.error("Error parsing date {} for permit {}: {}", availableDate, permit.getName(), e.getMessage());
+            cycle.get();
+        } catch (InterruptedException e) {
+            // Shutdown drain timed out; abandon the rest of the cycle
+            Thread.currentThread().interrupt();
+            cycle.cancel(true);
+            // Results are evaluated under the read lock: once the write lock has been held,
+            // every later result sees the flag, so nothing is notified after this returns
+            counts.abandoned = true;
+            catalogLock.writeLock().lock();
+            catalogLock.writeLock().unlock();
+            logger.warn("Permit check cycle interrupted");
             return false;
+        } catch (ExecutionException e) {
+            logger.error("Error checking permit availability", e.getCause());
+            counts.failures.incrementAndGet();
+        } finally {
+            cycleEvent.end();
+            if (cycleEvent.shouldCommit()) {
+                cycleEvent.permits = permitsById.size();
+                cycleEvent.failures = counts.failures.get();
+                cycleEvent.alerts = counts.alerts.get();
+                cycleEvent.commit();
+            }
+        }
+        // One line per cycle instead of one per permit and date
+        logger.atInfo().setMessage("Cycle complete")
+            .addKeyValue("permits", permitsById.size())
+            .addKeyValue("checked", counts.checked.get())
+            .addKeyValue("alerts", counts.alerts.get())
+            .addKeyValue("alreadyNotified", counts.alreadyNotified.get())
+            .addKeyValue("closed", counts.closed.get())
+            .addKeyValue("failed", counts.failures.get())
+            .addKeyValue("ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos))
+            .log();
+        logger.debug("Availability requests: {}, upstream fetches: {}, dedup ratio: {}",
+            apiClient.getRequestCount(), apiClient.getUpstreamFetchCount(), apiClient.getDedupRatio());
+        alertTracer.logSummary();
+        if (logger.isDebugEnabled()) {
+            for (String permitId : permitsById.keySet()) {
+                logger.debug("Transfer for permit {}: {}", permitId, apiClient.getTransferStats(permitId));
+            }
         }
+        return counts.failures.get() == 0;
     }
 
-    private static PermitAvailability checkAvailability(JsonNode jsonNode, Permit permit) {
+    private void handleResult(List<Permit> permits, AvailabilityResult result, CycleCounts counts) {
+        catalogLock.readLock().lock();
         try {
-            // Different logic for different permits
-            switch (permit.getId()) {
-                case "233260": // Enchantments
-                    return checkEnchantmentsAvailability(jsonNode);
+            if (counts.abandoned) {
+                logger.debug("Dropping result for permit {} from an interrupted cycle", result.getPermitId());
+                return;
+            }
+            for (Permit permit : permits) {
+                handleResult(permit, result, counts);
+            }
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
 
-                case "445859": // Mount Whitney
-                    return checkMountWhitneyAvailability(jsonNode);
+    private void handleResult(Permit permit, AvailabilityResult result, CycleCounts counts) {
+        if (!watchedPermits.contains(permit)) {
+            // Removed or replaced by a catalog update while its fetch was in flight
+            logger.debug("Dropping result for permit {} no longer in the catalog", permit.getId());
+            return;
+        }
+        if (result.isSuccess()) {
+            AlertTrace trace = alertTracer.start(permit.getId());
+            trace.mark(AlertTrace.Stage.FETCH_START, result.getFetchStartNanos());
+            trace.mark(AlertTrace.Stage.FETCH_END, result.getFetchEndNanos());
+            evaluateAvailability(permit, result.getAvailability(), trace, counts);
+        } else {
+            counts.failures.incrementAndGet();
+            logger.atError().setMessage("Permit check failed")
+                .addKeyValue("permit", permit.getId())
+                .addKeyValue("error", result.getError().getMessage())
+                .log();
+        }
+    }
+
+    /**
+     * Switches to a new set of permits without a restart. New permits, and permits whose
+     * dates or divisions changed, are evaluated right away against the availability last
+     * fetched for them; only those whose new dates fall outside what was fetched, or that
+     * were never fetched, are fetched again. Unchanged permits are left alone. The windows
+     * fetched from then on follow the new dates, so dropping dates narrows them. Results of
+     * a cycle already in flight are dropped for the permits this update removes or replaces.
+     *
+     * @param permits The permits to watch from now on
+     * @return Future completing once the changed permits have been evaluated
+     */
+    public CompletableFuture<Void> updateCatalog(List<Permit> permits) {
+        CycleCounts counts = new CycleCounts();
+        Map<String, List<Permit>> refetch = new LinkedHashMap<>();
+        catalogLock.writeLock().lock();
+        try {
+            swapCatalog(permits, counts, refetch);
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        if (refetch.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return apiClient.getPermitAvailability(refetch.keySet(),
+            result -> handleResult(refetch.get(result.getPermitId()), result, counts));
+    }
 
-                default:
-                    logger.warn("Unknown permit type: {}", permit.getId());
-                    return new PermitAvailability(false, null, 0);
+    /**
+     * Installs the new permits and re-evaluates the changed ones; called under the write lock.
+     * Changed permits that need fetching again are added to {@code refetch}.
+     */
+    private void swapCatalog(List<Permit> permits, CycleCounts counts, Map<String, List<Permit>> refetch) {
+        Map<String, Permit> current = new HashMap<>();
+        for (Permit permit : catalog.getPermits()) {
+            current.put(permit.getId() + "|" + permit.getName(), permit);
+        }
+        List<Permit> next = new ArrayList<>();
+        List<Permit> changed = new ArrayList<>();
+        for (Permit permit : permits) {
+            Permit previous = current.remove(permit.getId() + "|" + permit.getName());
+            if (previous != null && previous.hasSameTargets(permit)) {
+                // Keep the existing instance so its open dates and board entry stay attached
+                next.add(previous);
+                continue;
             }
-        } catch (Exception e) {
-            logger.error("Error parsing availability response for {}: {}", permit.getName(), e.getMessage());
-            return new PermitAvailability(false, null, 0);
+            next.add(permit);
+            changed.add(permit);
+            if (previous != null) {
+                Set<String> openKeys = openKeysByPermit.remove(previous);
+                if (openKeys != null) {
+                    openKeysByPermit.put(permit, openKeys);
+                }
+            }
+        }
+        for (Permit removed : current.values()) {
+            openKeysByPermit.remove(removed);
+        }
+        catalog.setPermits(next);
+        watchedPermits = new HashSet<>(next);
+        availabilityBoard.retain(next);
+        Set<String> watchedIds = new HashSet<>();
+        for (Permit permit : next) {
+            watchedIds.add(permit.getId());
         }
+        lastAvailability.keySet().retainAll(watchedIds);
+
+        // Whether the last fetch covers the new dates is judged before the scopes are replaced
+        Set<Permit> covered = new HashSet<>();
+        for (Permit permit : changed) {
+            if (isFetched(permit)) {
+                covered.add(permit);
+            }
+        }
+        Set<String> droppedIds = new HashSet<>();
+        for (Permit removed : current.values()) {
+            droppedIds.add(removed.getId());
+        }
+        droppedIds.removeAll(watchedIds);
+        scopeDates(next, droppedIds);
+
+        int reevaluated = 0;
+        for (Permit permit : changed) {
+            if (shardCoordinator != null && !shardCoordinator.owns(permit.getId())) {
+                continue;
+            }
+            JsonNode last = lastAvailability.get(permit.getId());
+            if (last != null && covered.contains(permit)) {
+                AlertTrace trace = alertTracer.start(permit.getId());
+                evaluateAvailability(permit, last, trace, counts);
+                reevaluated++;
+            } else {
+                refetch.computeIfAbsent(permit.getId(), id -> new ArrayList<>()).add(permit);
+            }
+        }
+        logger.atInfo().setMessage("Permit catalog updated")
+            .addKeyValue("permits", next.size())
+            .addKeyValue("changed", changed.size())
+            .addKeyValue("removed", current.size())
+            .addKeyValue("reevaluated", reevaluated)
+            .addKeyValue("refetched", refetch.size())
+            .addKeyValue("alerts", counts.alerts.get())
+            .log();
     }
 
-    private static PermitAvailability checkEnchantmentsAvailability(JsonNode jsonNode) {
-        if (jsonNode.has("availability")) {
-            JsonNode availability = jsonNode.get("availability");
-            for (JsonNode date : availability) {
-                if (date.has("remaining") && date.get("remaining").asInt() > 0) {
-                    String dateStr = date.has("date") ? date.get("date").asText() : "Unknown date";
-                    int remaining = date.get("remaining").asInt();
-                    return new PermitAvailability(true, dateStr, remaining);
+    /**
+     * Whether the last fetch of a permit's availability covered all of its target dates.
+     */
+    private boolean isFetched(Permit permit) {
+        List<DateWindow> windows = apiClient.getDateWindows(permit.getId());
+        if (windows.isEmpty()) {
+            // The whole season is fetched
+            return true;
+        }
+        for (LocalDate date : permit.getTargetDates()) {
+            boolean inWindow = false;
+            for (DateWindow window : windows) {
+                if (!date.isBefore(window.getStart()) && !date.isAfter(window.getEnd())) {
+                    inWindow = true;
+                    break;
                 }
             }
+            if (!inWindow) {
+                return false;
+            }
         }
-        return new PermitAvailability(false, null, 0);
+        return true;
     }
 
-    private static PermitAvailability checkMountWhitneyAvailability(JsonNode jsonNode) {
-        if (jsonNode.has("availability")) {
-            JsonNode availability = jsonNode.get("availability");
-            for (JsonNode date : availability) {
-                if (date.has("remaining") && date.get("remaining").asInt() > 0) {
-                    String dateStr = date.has("date") ? date.get("date").asText() : "Unknown date";
-                    int remaining = date.get("remaining").asInt();
-                    return new PermitAvailability(true, dateStr, remaining);
+    /**
+     * Checks the availability of a specific permit and sends notifications if available.
+     *
+     * @param permit The permit to check
+     * @throws IOException if there's an error communicating with the API
+     */
+    public void checkPermitAvailability(Permit permit) throws IOException {
+        try {
+            AlertTrace trace = alertTracer.start(permit.getId());
+            trace.mark(AlertTrace.Stage.FETCH_START);
+            JsonNode jsonNode = apiClient.getPermitAvailability(permit.getId());
+            trace.mark(AlertTrace.Stage.FETCH_END);
+            evaluateAvailability(permit, jsonNode, trace, new CycleCounts());
+        } catch (IOException e) {
+            logger.error("Error making API request for {}: {}", permit.getName(), e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates fetched availability for a permit and sends notifications if available.
+     *
+     * @param permit The permit the availability belongs to
+     * @param jsonNode The availability response
+     * @param trace The trace of this poll
+     * @param counts Tally of the cycle the check belongs to
+     */
+    private void evaluateAvailability(Permit permit, JsonNode jsonNode, AlertTrace trace, CycleCounts counts) {
+        counts.checked.incrementAndGet();
+        // Kept so a change of targets can be evaluated without fetching again
+        lastAvailability.put(permit.getId(), jsonNode);
+        // Check if permits are available on the target dates
+        List<PermitAvailability> matches;
+        try {
+            AvailabilityIndex index = AvailabilityIndex.build(jsonNode, permit.getDivisions(), permit.getTargets());
+            trace.mark(AlertTrace.Stage.PARSED);
+            matches = AvailabilityMatcher.findMatches(index, permit.getTargets());
+            trace.mark(AlertTrace.Stage.EVALUATED);
+        } catch (Exception e) {
+            counts.failures.incrementAndGet();
+            logger.atError().setMessage("Unparseable availability response")
+                .addKeyValue("permit", permit.getId())
+                .addKeyValue("error", e.getMessage())
+                .log();
+            return;
+        }
+        logger.atDebug().setMessage("Permit checked")
+            .addKeyValue("permit", permit.getId())
+            .addKeyValue("matches", matches.size())
+            .log();
+        availabilityBoard.record(permit, matches);
+
+        Set<String> openKeys = new HashSet<>();
+        for (PermitAvailability availability : matches) {
+            String notificationKey = notificationKey(permit, availability);
+            openKeys.add(notificationKey);
+
+            // Only send notification if we haven't notified about this date before
+            boolean firstNotice;
+            try {
+                firstNotice = notificationStore.markNotified(notificationKey);
+            } catch (UncheckedIOException e) {
+                // A shared store that cannot be written must not stop the other dates being checked
+                counts.failures.incrementAndGet();
+                logger.atError().setMessage("Failed to record notification")
+                    .addKeyValue("key", notificationKey)
+                    .addKeyValue("error", e.getMessage())
+                    .log();
+                continue;
+            }
+            if (firstNotice) {
+                AlertTrace alertTrace = trace.forAlert(availability.getAvailableDate());
+                alertTrace.mark(AlertTrace.Stage.DEDUPED);
+                LoggingEventBuilder event = logger.atInfo().setMessage("Permit available")
+                    .addKeyValue("permit", permit.getId())
+                    .addKeyValue("date", availability.getAvailableDate())
+                    .addKeyValue("nights", availability.getNights())
+                    .addKeyValue("remaining", availability.getRemainingPermits());
+                if (availability.hasDivision()) {
+                    event.addKeyValue("division", availability.getDivision());
                 }
+                event.log();
+                notifier.notifyPermitAvailable(permit, availability, formatMessage(permit, availability), alertTrace);
+                counts.alerts.incrementAndGet();
+            } else {
+                counts.alreadyNotified.incrementAndGet();
             }
         }
-        return new PermitAvailability(false, null, 0);
+
+        // If permits are no longer available, remove from notified dates so a reopening alerts again
+        Set<String> previouslyOpen = openKeysByPermit.put(permit, openKeys);
+        if (previouslyOpen != null) {
+            for (String notificationKey : previouslyOpen) {
+                if (!openKeys.contains(notificationKey) && notificationStore.clear(notificationKey)) {
+                    counts.closed.incrementAndGet();
+                    logger.atInfo().setMessage("Permit no longer available")
+                        .addKeyValue("key", notificationKey)
+                        .log();
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome tally of one check cycle, updated from the fetch threads and logged once at the end.
+     */
+    private static class CycleCounts {
+        private final AtomicInteger checked = new AtomicInteger();
+        private final AtomicInteger alerts = new AtomicInteger();
+        private final AtomicInteger alreadyNotified = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean abandoned;
+    }
+
+    private static String notificationKey(Permit permit, PermitAvailability availability) {
+        String key = permit.getId() + "_" + availability.getAvailableDate();
+        if (availability.getNights() > 1) {
+            key += "_" + availability.getNights() + "n";
+        }
+        return availability.hasDivision() ? key + "_" + availability.getDivision() : key;
+    }
+
+    private static String formatMessage(Permit permit, PermitAvailability availability) {
+        String name = availability.hasDivision()
+            ? permit.getName() + " (division " + availability.getDivision() + ")"
+            : permit.getName();
+        if (availability.getNights() > 1) {
+            return String.format("%s permit is available for %d consecutive nights starting: %s with at least %d permits remaining!",
+                name,
+                availability.getNights(),
+                availability.getAvailableDate(),
+                availability.getRemainingPermits());
+        }
+        return String.format("%s permit is available for date: %s with %d permits remaining!",
+            name,
+            availability.getAvailableDate(),
+            availability.getRemainingPermits());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package com.rei.permit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP client that passes requests through to another client and appends every response
+ * it receives to a capture file, so production traffic can be replayed later with
+ * {@link ReplayHttpClient}. Bodies are read in full before they are handed on, up to the
+ * body size limit; a larger body is aborted and not recorded. Requests that fail without a
+ * response are not recorded.
+ */
+public class RecordingHttpClient extends CloseableHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(RecordingHttpClient.class);
+
+    private final CloseableHttpClient delegate;
+    private final HttpCapture.Writer writer;
+    private final LongAdder recordedCount = new LongAdder();
+    private volatile long maxBodyBytes = Long.MAX_VALUE;
+
+    /**
+     * Creates a recording client.
+     *
+     * @param delegate The client that sends the requests
+     * @param captureFile The capture file to append to
+     * @throws IOException if the capture file cannot be opened
+     */
+    public RecordingHttpClient(CloseableHttpClient delegate, Path captureFile) throws IOException {
+        this.delegate = delegate;
+        this.writer = new HttpCapture.Writer(captureFile);
+        logger.info("Recording recreation.gov responses to {}", captureFile);
+    }
+
+    /**
+     * Sets the largest body read from the wire. Bodies are recorded as received, so the
+     * limit counts compressed bytes and a body passing it may still be refused once decoded.
+     *
+     * @param maxBodyBytes Maximum body size in bytes
+     */
+    public void setMaxBodyBytes(long maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+        throws IOException {
+        long recordedAt = System.currentTimeMillis();
+        long start = System.nanoTime();
+        HttpCapture.Exchange exchange;
+        try (CloseableHttpResponse response = delegate.execute(target, request, context)) {
+            HttpEntity entity = response.getEntity();
+            byte[] body = entity == null ? null : readBody(entity, request);
+            int latencyMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            exchange = HttpCapture.capture(recordedAt, latencyMillis, HttpCapture.urlOf(target, request), response, body);
+        }
+        try {
+            writer.append(exchange);
+            recordedCount.increment();
+        } catch (IOException e) {
+            // Losing a record must not fail the poll
+            logger.warn("Failed to record response from {}: {}", exchange.getUrl(), e.getMessage());
+        }
+        return exchange.toResponse();
+    }
+
+    private byte[] readBody(HttpEntity entity, HttpRequest request) throws IOException {
+        long limit = maxBodyBytes;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(
+            (int) Math.max(0, Math.min(entity.getContentLength(), Math.min(limit, Integer.MAX_VALUE - 8))));
+        byte[] buffer = new byte[8192];
+        try (InputStream in = entity.getContent()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (body.size() + (long) read > limit) {
+                    // Stop reading from the socket rather than drain the rest of the body
+                    if (request instanceof HttpUriRequest) {
+                        ((HttpUriRequest) request).abort();
+                    }
+                    throw new IOException("Response body exceeds the limit of " + limit + " bytes");
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Returns the number of exchanges appended to the capture file.
+     */
+    public long getRecordedCount() {
+        return recordedCount.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpParams getParams() {
+        return delegate.getParams();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ClientConnectionManager getConnectionManager() {
+        return delegate.getConnectionManager();
+    }
+}
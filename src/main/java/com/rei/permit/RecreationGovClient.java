@@ -2,18 +2,57 @@ package com.rei.permit;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 /**
  * Client for interacting with the Recreation.gov API.
@@ -23,11 +62,49 @@ public class RecreationGovClient {
     private static final Logger logger = LoggerFactory.getLogger(RecreationGovClient.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
     private static final String BASE_URL = "https://www.recreation.gov/api/permits/";
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final int MAX_WINDOW_GAP_DAYS = 7;
+    private static final int LATENCY_SAMPLES = 256;
+    private static final long DEFAULT_MAX_BODY_BYTES = 8L * 1024 * 1024;
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+    private static final int GZIP_FHCRC = 2;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+    // Each thread decodes one response at a time, so its inflaters and buffer are reset and reused
+    private static final ThreadLocal<DecodeBuffers> decodeBuffers = ThreadLocal.withInitial(DecodeBuffers::new);
+    // A hedge only helps if it starts at once; one that cannot get a connection this fast is dropped
+    private static final int HEDGE_LEASE_TIMEOUT_MS = 50;
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     
     private final CloseableHttpClient httpClient;
     private final int maxRetries;
     private final Duration timeout;
+    private final int maxConnections;
+    private ExecutorService bulkExecutor;
+    private ExecutorService attemptExecutor;
+    private ExecutorService hedgeExecutor;
+    private volatile HedgePolicy hedgePolicy;
+    private volatile long maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+    private final Map<String, TransferStats> transferStats = new ConcurrentHashMap<>();
+    private final LatencyTracker latencies = new LatencyTracker(LATENCY_SAMPLES);
+    private final LongAdder attemptCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    // Single-flight: concurrent callers for the same permit and date scope share one in-flight fetch
+    private final Map<FlightKey, CompletableFuture<JsonNode>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CachedResult> resultCache = new ConcurrentHashMap<>();
+    private final Map<String, DateScope> dateScopes = new ConcurrentHashMap<>();
+    private final Map<String, Map<Object, DateScope>> dateScopesByOwner = new HashMap<>();
+    private volatile long resultCacheTtlNanos;
+    private volatile long requestIntervalNanos;
+    private final Object pacingLock = new Object();
+    private long nextRequestNanos = System.nanoTime();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder cacheHitCount = new LongAdder();
+    private final LongAdder upstreamFetchCount = new LongAdder();
 
     /**
      * Creates a new RecreationGovClient with default settings.
@@ -43,14 +120,21 @@ public class RecreationGovClient {
      * @param timeout Request timeout duration
      */
     public RecreationGovClient(int maxRetries, Duration timeout) {
-        this.maxRetries = maxRetries;
-        this.timeout = timeout;
-        this.httpClient = HttpClients.custom()
-            .setDefaultRequestConfig(RequestConfig.custom()
-                .setConnectTimeout((int) timeout.toMillis())
-                .setSocketTimeout((int) timeout.toMillis())
-                .build())
-            .build();
+        this(maxRetries, timeout, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Creates a new RecreationGovClient with custom settings and connection pool size.
+     * A single client is safe to share between checkers; the pool bounds the number of
+     * concurrent connections to recreation.gov across all of them. The pool holds
+     * {@link #hedgeConnections(int)} connections on top of that for hedged requests.
+     *
+     * @param maxRetries Maximum number of retry attempts for failed requests
+     * @param timeout Request timeout duration
+     * @param maxConnections Maximum number of pooled connections
+     */
+    public RecreationGovClient(int maxRetries, Duration timeout, int maxConnections) {
+        this(newHttpClient(timeout, maxConnections), maxRetries, timeout, maxConnections);
     }
 
     /**
@@ -62,41 +146,438 @@ public class RecreationGovClient {
      * @param timeout Request timeout duration
      */
     public RecreationGovClient(CloseableHttpClient httpClient, int maxRetries, Duration timeout) {
+        this(httpClient, maxRetries, timeout, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    private RecreationGovClient(CloseableHttpClient httpClient, int maxRetries, Duration timeout, int maxConnections) {
         this.maxRetries = maxRetries;
         this.timeout = timeout;
+        this.maxConnections = maxConnections;
         this.httpClient = httpClient;
     }
 
+    /**
+     * Creates a client that talks to recreation.gov and appends every response it receives,
+     * with its status, headers, body and latency, to a capture file for later replay.
+     *
+     * @param captureFile The capture file to append to
+     * @param maxRetries Maximum number of retry attempts for failed requests
+     * @param timeout Request timeout duration
+     * @param maxConnections Maximum number of pooled connections
+     * @return The recording client
+     * @throws IOException if the capture file cannot be opened
+     */
+    public static RecreationGovClient recording(Path captureFile, int maxRetries, Duration timeout,
+                                                int maxConnections) throws IOException {
+        return new RecreationGovClient(new RecordingHttpClient(newHttpClient(timeout, maxConnections), captureFile),
+            maxRetries, timeout, maxConnections);
+    }
+
+    /**
+     * Creates a client that answers from a capture file instead of recreation.gov, playing
+     * it back in real time or faster. See {@link ReplayHttpClient}.
+     *
+     * @param captureFile The capture file written in record mode
+     * @param speed How many times faster than real time the capture is played back
+     * @param maxRetries Maximum number of retry attempts for failed requests
+     * @param timeout Request timeout duration
+     * @param maxConnections Maximum number of concurrent requests
+     * @return The replaying client
+     * @throws IOException if the capture cannot be read
+     */
+    public static RecreationGovClient replaying(Path captureFile, double speed, int maxRetries, Duration timeout,
+                                                int maxConnections) throws IOException {
+        return new RecreationGovClient(new ReplayHttpClient(captureFile, speed), maxRetries, timeout, maxConnections);
+    }
+
+    private static CloseableHttpClient newHttpClient(Duration timeout, int maxConnections) {
+        // Compressed responses are decoded in execute() so the body size limit applies on the wire
+        int poolSize = maxConnections + hedgeConnections(maxConnections);
+        return HttpClients.custom()
+            .disableContentCompression()
+            .setMaxConnTotal(poolSize)
+            .setMaxConnPerRoute(poolSize)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout((int) timeout.toMillis())
+                .setConnectTimeout((int) timeout.toMillis())
+                .setSocketTimeout((int) timeout.toMillis())
+                .build())
+            .build();
+    }
+
+    /**
+     * Returns the number of hedged requests that may be in flight at once. The connection pool
+     * holds this many connections beyond {@code maxConnections}, and hedged attempts send at
+     * most {@code maxConnections} primaries at a time, so a hedge never waits behind the slow
+     * primaries it is racing.
+     *
+     * @param maxConnections Maximum number of connections for primary requests
+     * @return The number of connections reserved for hedges
+     */
+    static int hedgeConnections(int maxConnections) {
+        return Math.max(1, maxConnections / 4);
+    }
+
+    /**
+     * Sets how long a fetched result is served to later callers without going upstream.
+     * Defaults to zero, which disables the cache and only coalesces concurrent callers.
+     *
+     * @param ttl Time to live of cached results
+     */
+    public void setResultCacheTtl(Duration ttl) {
+        this.resultCacheTtlNanos = ttl.toNanos();
+        if (resultCacheTtlNanos <= 0) {
+            resultCache.clear();
+        }
+    }
+
+    /**
+     * Sets the minimum time between the starts of two upstream requests. Bulk fetches run
+     * up to one request per pooled connection at a time; pacing spreads their starts out so
+     * a cycle sends no more requests per second than fetching one permit after another did.
+     * Retries are paced too; hedged copies are not, as the hedge budget already bounds them.
+     * Defaults to zero, which disables pacing.
+     *
+     * @param interval Minimum time between request starts
+     */
+    public void setRequestInterval(Duration interval) {
+        this.requestIntervalNanos = interval.toNanos();
+    }
+
+    /**
+     * Enables hedged requests to cut tail latency. Disabled by default. At most
+     * {@link #hedgeConnections(int)} hedges are in flight; a hedge that finds them all busy
+     * is skipped and the attempt waits for its primary.
+     *
+     * @param policy The hedge policy, or null to disable hedging
+     */
+    public void setHedgePolicy(HedgePolicy policy) {
+        this.hedgePolicy = policy;
+    }
+
+    /**
+     * Sets the largest response body accepted, counted after decompression. A response
+     * that grows past the limit is aborted while it is still being read.
+     *
+     * @param maxBodyBytes Maximum decoded body size in bytes
+     */
+    public void setMaxBodyBytes(long maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+        if (httpClient instanceof RecordingHttpClient) {
+            // The recorder buffers the body before this client sees it
+            ((RecordingHttpClient) httpClient).setMaxBodyBytes(maxBodyBytes);
+        }
+    }
+
+    /**
+     * Returns the transfer totals for a permit.
+     *
+     * @param permitId The permit ID
+     * @return The totals, empty if nothing was fetched for the permit yet
+     */
+    public TransferStats getTransferStats(String permitId) {
+        TransferStats stats = transferStats.get(permitId);
+        return stats == null ? new TransferStats() : stats;
+    }
+
     /**
      * Retrieves permit availability information for a specific permit ID.
+     * Concurrent calls for the same permit share a single upstream request, and results
+     * younger than the result cache TTL are served without a request. The returned node
+     * may be shared between callers and must be treated as read-only.
      *
      * @param permitId The ID of the permit to check
      * @return JsonNode containing the permit availability information
      * @throws IOException if the request fails after all retry attempts
      */
     public JsonNode getPermitAvailability(String permitId) throws IOException {
+        try {
+            return getPermitAvailabilityAsync(permitId).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for permit availability", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Returns a future for the availability of a permit. If a fetch for the permit is already
+     * in flight the caller joins it instead of starting another one. A new fetch runs on the
+     * calling thread, so the returned future is already complete unless it was joined.
+     *
+     * @param permitId The ID of the permit to check
+     * @return Future completing with the permit availability information
+     */
+    public CompletableFuture<JsonNode> getPermitAvailabilityAsync(String permitId) {
+        requestCount.increment();
+        FlightEvents.AvailabilityRequest event = new FlightEvents.AvailabilityRequest();
+        event.begin();
+        // Results only count for the scope they were fetched with; a changed scope needs a new fetch
+        DateScope scope = dateScopes.get(permitId);
+        JsonNode cached = cachedResult(permitId, scope);
+        if (cached != null) {
+            cacheHitCount.increment();
+            commit(event, permitId, "cache", true);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        FlightKey key = new FlightKey(permitId, scope);
+        CompletableFuture<JsonNode> flight = new CompletableFuture<>();
+        CompletableFuture<JsonNode> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCount.increment();
+            commit(event, permitId, "coalesced", true);
+            return existing;
+        }
+
+        String source = "upstream";
+        try {
+            // A leader that finished between the cache check and putIfAbsent left its result behind
+            cached = cachedResult(permitId, scope);
+            if (cached != null) {
+                cacheHitCount.increment();
+                source = "cache";
+                flight.complete(cached);
+                return flight;
+            }
+            upstreamFetchCount.increment();
+            JsonNode node = fetchPermitAvailability(permitId, scope);
+            if (resultCacheTtlNanos > 0 && dateScopes.get(permitId) == scope) {
+                resultCache.put(permitId, new CachedResult(node, scope, System.nanoTime()));
+            }
+            flight.complete(node);
+        } catch (Exception e) {
+            flight.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, flight);
+            commit(event, permitId, source, !flight.isCompletedExceptionally());
+        }
+        return flight;
+    }
+
+    /**
+     * Returns the cached result for a permit if it is younger than the TTL and was fetched
+     * with the given scope, or null.
+     */
+    private JsonNode cachedResult(String permitId, DateScope scope) {
+        CachedResult cached = resultCache.get(permitId);
+        if (cached == null || cached.scope != scope || System.nanoTime() - cached.fetchedAtNanos >= resultCacheTtlNanos) {
+            return null;
+        }
+        return cached.node;
+    }
+
+    private static void commit(FlightEvents.AvailabilityRequest event, String permitId, String source,
+                               boolean success) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.permitId = permitId;
+            event.source = source;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * Retrieves availability for several permits at once. Requests are pipelined over the
+     * connection pool, at most one per pooled connection at a time and no more often than the
+     * request interval allows, and each result is handed
+     * to the callback as soon as it completes. A failing permit is reported through its own
+     * result and does not affect the rest of the batch.
+     *
+     * Cancelling the returned future cancels the permits not fetched yet and drops the results
+     * of fetches still running, so the callback is not invoked for them.
+     *
+     * @param permitIds The IDs of the permits to check; duplicates are fetched once
+     * @param onResult Callback invoked once per permit, possibly concurrently from several threads
+     * @return Future that completes once every permit has been reported
+     */
+    public CompletableFuture<Void> getPermitAvailability(Collection<String> permitIds,
+                                                         Consumer<AvailabilityResult> onResult) {
+        ExecutorService executor = bulkExecutor();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        for (String permitId : new LinkedHashSet<>(permitIds)) {
+            tasks.add(CompletableFuture.runAsync(() -> {
+                if (cancelled.get()) {
+                    return;
+                }
+                AvailabilityResult result;
+                long start = System.nanoTime();
+                try {
+                    JsonNode availability = getPermitAvailability(permitId);
+                    result = AvailabilityResult.success(permitId, availability, start, System.nanoTime());
+                } catch (Exception e) {
+                    result = AvailabilityResult.failure(permitId, e);
+                }
+                if (cancelled.get()) {
+                    logger.debug("Dropping result for permit {} from a cancelled batch", permitId);
+                    return;
+                }
+                try {
+                    onResult.accept(result);
+                } catch (Exception e) {
+                    logger.error("Error handling availability result for permit {}", permitId, e);
+                }
+            }, executor));
+        }
+        CompletableFuture<Void> batch = CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+        batch.whenComplete((ignored, error) -> {
+            if (batch.isCancelled()) {
+                cancelled.set(true);
+                tasks.forEach(task -> task.cancel(false));
+            }
+        });
+        return batch;
+    }
+
+    private synchronized ExecutorService bulkExecutor() {
+        if (bulkExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            bulkExecutor = Executors.newFixedThreadPool(maxConnections, r -> {
+                Thread thread = new Thread(r, "recreation-gov-fetch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return bulkExecutor;
+    }
+
+    /**
+     * Restricts future availability fetches for a permit to windows covering the given dates.
+     * Scopes added this way only ever grow; registering an empty collection means the whole
+     * season is needed. Callers whose dates change should use
+     * {@link #setDateScope(Object, String, Collection)} instead.
+     *
+     * @param permitId The permit ID
+     * @param dates The dates a caller watches, or an empty collection for all dates
+     */
+    public void addDateScope(String permitId, Collection<LocalDate> dates) {
+        updateDateScope(permitId, owners -> owners.merge(this, new DateScope(dates), DateScope::with));
+    }
+
+    /**
+     * Sets the dates one owner watches for a permit, replacing what that owner set before.
+     * Fetches cover the union of every owner's dates, so checkers sharing this client never
+     * hide each other's dates, and the windows narrow again when an owner drops dates.
+     *
+     * @param owner The caller the dates belong to, typically a checker
+     * @param permitId The permit ID
+     * @param dates The dates the owner watches, or an empty collection for all dates
+     */
+    public void setDateScope(Object owner, String permitId, Collection<LocalDate> dates) {
+        updateDateScope(permitId, owners -> owners.put(owner, new DateScope(dates)));
+    }
+
+    /**
+     * Withdraws the dates one owner watches for a permit.
+     *
+     * @param owner The caller the dates belong to
+     * @param permitId The permit ID
+     */
+    public void removeDateScope(Object owner, String permitId) {
+        updateDateScope(permitId, owners -> owners.remove(owner));
+    }
+
+    private synchronized void updateDateScope(String permitId, Consumer<Map<Object, DateScope>> change) {
+        Map<Object, DateScope> owners = dateScopesByOwner.computeIfAbsent(permitId, id -> new HashMap<>());
+        change.accept(owners);
+        DateScope merged = null;
+        for (DateScope scope : owners.values()) {
+            merged = merged == null ? scope : merged.with(scope);
+        }
+        if (merged == null) {
+            dateScopesByOwner.remove(permitId);
+            dateScopes.remove(permitId);
+        } else {
+            dateScopes.put(permitId, merged);
+        }
+        resultCache.remove(permitId);
+        logger.debug("Availability for permit {} is fetched in windows {}", permitId,
+            merged == null || merged.windows.isEmpty() ? "[whole season]" : merged.windows);
+    }
+
+    /**
+     * Returns the windows fetched for a permit, or an empty list if the whole season is fetched.
+     *
+     * @param permitId The permit ID
+     * @return The cached windows
+     */
+    public List<DateWindow> getDateWindows(String permitId) {
+        DateScope scope = dateScopes.get(permitId);
+        return scope == null ? Collections.emptyList() : scope.windows;
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Fetches permit availability from recreation.gov, retrying failed requests.
+     *
+     * @param permitId The ID of the permit to check
+     * @param scope The windows to fetch, or null for the whole season
+     * @return JsonNode containing the permit availability information
+     * @throws IOException if the request fails after all retry attempts
+     */
+    private JsonNode fetchPermitAvailability(String permitId, DateScope scope) throws IOException {
         String url = BASE_URL + permitId + "/availability";
+        TransferStats stats = transferStats.computeIfAbsent(permitId, id -> new TransferStats());
+        if (scope == null || scope.windows.isEmpty()) {
+            return fetch(permitId, url, stats);
+        }
+
+        // Only request the windows covering the watched dates and merge them into one view
+        ObjectNode merged = objectMapper.createObjectNode();
+        for (DateWindow window : scope.windows) {
+            merge(merged, fetch(permitId, url + "?start_date=" + window.getStart() + "&end_date=" + window.getEnd(), stats));
+        }
+        return merged;
+    }
+
+    /**
+     * Merges one window's response into the combined view: arrays are concatenated,
+     * objects are merged recursively, and other values keep their first occurrence.
+     */
+    private static void merge(ObjectNode target, JsonNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode existing = target.get(field.getKey());
+            JsonNode value = field.getValue();
+            if (existing == null) {
+                target.set(field.getKey(), value.deepCopy());
+            } else if (existing.isArray() && value.isArray()) {
+                ((ArrayNode) existing).addAll((ArrayNode) value.deepCopy());
+            } else if (existing.isObject() && value.isObject()) {
+                merge((ObjectNode) existing, value);
+            }
+        }
+    }
+
+    private JsonNode fetch(String permitId, String url, TransferStats stats) throws IOException {
         logger.debug("Fetching permit availability from: {}", url);
 
         try {
             return RetryUtil.retry(() -> {
-                HttpGet request = new HttpGet(url);
-                request.setHeader("User-Agent", USER_AGENT);
-                request.setHeader("Accept", "application/json");
-
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode != 200) {
-                        throw new IOException("Failed to get permit availability. Status code: " + statusCode);
-                    }
-
-                    HttpEntity entity = response.getEntity();
-                    if (entity == null) {
-                        throw new IOException("Empty response from server");
-                    }
-
-                    String jsonResponse = EntityUtils.toString(entity);
-                    return objectMapper.readTree(jsonResponse);
+                try {
+                    pace();
+                    attemptCount.increment();
+                    return hedgePolicy != null ? executeHedged(url, permitId, stats, hedgePolicy)
+                        : execute(newRequest(url), permitId, stats, false);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -116,6 +597,352 @@ public class RecreationGovClient {
         }
     }
 
+    /**
+     * Waits for the next free request slot; slots are handed out one request interval apart.
+     */
+    private void pace() throws IOException {
+        long interval = requestIntervalNanos;
+        if (interval <= 0) {
+            return;
+        }
+        long slot;
+        synchronized (pacingLock) {
+            slot = Math.max(System.nanoTime(), nextRequestNanos);
+            nextRequestNanos = slot + interval;
+        }
+        long waitNanos = slot - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send a request");
+            }
+        }
+    }
+
+    private static HttpGet newRequest(String url) {
+        HttpGet request = new HttpGet(url);
+        request.setHeader("User-Agent", USER_AGENT);
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Accept-Encoding", "gzip, deflate");
+        return request;
+    }
+
+    private JsonNode execute(HttpGet request, String permitId, TransferStats stats, boolean hedge) throws IOException {
+        FlightEvents.HttpCall call = new FlightEvents.HttpCall();
+        call.begin();
+        int statusCode = 0;
+        LimitedInputStream wire = null;
+        LimitedInputStream decoded = null;
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 200) {
+                throw new IOException("Failed to get permit availability. Status code: " + statusCode);
+            }
+
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                throw new IOException("Empty response from server");
+            }
+            long limit = maxBodyBytes;
+            if (entity.getContentLength() > limit) {
+                throw new IOException("Response body of " + entity.getContentLength()
+                    + " bytes exceeds the limit of " + limit + " bytes");
+            }
+
+            // Decompress and parse straight from the socket: inflating reuses this thread's
+            // inflater and input buffer, and Jackson reads through its own per-thread recycled
+            // buffers, so no intermediate String or byte[] is built
+            long decodeStart = System.nanoTime();
+            wire = new LimitedInputStream(entity.getContent(), Long.MAX_VALUE, null);
+            decoded = new LimitedInputStream(decode(wire, entity.getContentEncoding()), limit, request::abort);
+            FlightEvents.JsonParse parse = new FlightEvents.JsonParse();
+            parse.begin();
+            JsonNode node = objectMapper.readTree(decoded);
+            parse.end();
+            if (parse.shouldCommit()) {
+                parse.permitId = permitId;
+                parse.bytes = decoded.count;
+                parse.commit();
+            }
+            if (node == null || node.isMissingNode()) {
+                throw new IOException("Empty response from server");
+            }
+            long end = System.nanoTime();
+            stats.record(wire.count, decoded.count, end - decodeStart);
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(end - start));
+            logger.debug("Received {} bytes ({} decoded) from {} in {} ms", wire.count, decoded.count,
+                request.getURI(), TimeUnit.NANOSECONDS.toMillis(end - start));
+            return node;
+        } finally {
+            if (decoded != null) {
+                closeQuietly(decoded);
+            }
+            call.end();
+            if (call.shouldCommit()) {
+                call.permitId = permitId;
+                call.url = request.getURI().toString();
+                call.statusCode = statusCode;
+                call.wireBytes = wire == null ? 0 : wire.count;
+                call.decodedBytes = decoded == null ? 0 : decoded.count;
+                call.hedged = hedge;
+                call.commit();
+            }
+        }
+    }
+
+    /**
+     * Closes a decoded body, which hands the thread's inflater back even if parsing failed.
+     * Jackson usually closed it already, which makes this a no-op.
+     */
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            logger.debug("Error closing response body: {}", e.getMessage());
+        }
+    }
+
+    private static InputStream decode(InputStream in, Header contentEncoding) throws IOException {
+        String encoding = contentEncoding == null ? "" : contentEncoding.getValue().trim();
+        if (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")) {
+            readGzipHeader(in);
+            return new ReusedInflaterStream(in, buffers(), true, true);
+        }
+        if (encoding.equalsIgnoreCase("deflate")) {
+            return inflate(in);
+        }
+        if (encoding.isEmpty() || encoding.equalsIgnoreCase("identity")) {
+            return in;
+        }
+        throw new IOException("Unsupported content encoding: " + encoding);
+    }
+
+    /**
+     * Opens a "deflate" body. The encoding is defined as zlib-wrapped, but some servers send a
+     * raw deflate stream instead, so the first two bytes are checked for a zlib header.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        PushbackInputStream body = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        int n;
+        while (read < header.length && (n = body.read(header, read, header.length - read)) >= 0) {
+            read += n;
+        }
+        body.unread(header, 0, read);
+        boolean zlib = read == 2 && (header[0] & 0x0F) == 8
+            && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        return new ReusedInflaterStream(body, buffers(), !zlib, false);
+    }
+
+    /**
+     * Returns this thread's decode buffers, or fresh ones if a response is already being
+     * decoded on the thread.
+     */
+    private static DecodeBuffers buffers() {
+        DecodeBuffers buffers = decodeBuffers.get();
+        if (buffers.inUse) {
+            return new DecodeBuffers();
+        }
+        buffers.inUse = true;
+        return buffers;
+    }
+
+    /**
+     * Skips a gzip member header (RFC 1952), leaving the stream at the deflate data.
+     */
+    private static void readGzipHeader(InputStream in) throws IOException {
+        if ((readByte(in) | readByte(in) << 8) != GZIPInputStream.GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readByte(in) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readByte(in);
+        skipBytes(in, 6); // Modification time, extra flags, operating system
+        if ((flags & GZIP_FEXTRA) != 0) {
+            skipBytes(in, readByte(in) | readByte(in) << 8);
+        }
+        if ((flags & GZIP_FNAME) != 0) {
+            while (readByte(in) != 0) {
+                // Skip the file name
+            }
+        }
+        if ((flags & GZIP_FCOMMENT) != 0) {
+            while (readByte(in) != 0) {
+                // Skip the comment
+            }
+        }
+        if ((flags & GZIP_FHCRC) != 0) {
+            skipBytes(in, 2);
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of compressed response");
+        }
+        return b;
+    }
+
+    private static void skipBytes(InputStream in, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte(in);
+        }
+    }
+
+    /**
+     * Executes one attempt with hedging: if the primary request has not answered within the
+     * hedge delay and the hedge budget allows, a second request is sent, the first successful
+     * response wins and the other request is aborted. Each request reads into its own
+     * totals; only the winner's are added to the permit's transfer stats. Hedges use the
+     * connections reserved for them; when none is free the attempt waits for the primary.
+     */
+    private JsonNode executeHedged(String url, String permitId, TransferStats stats, HedgePolicy policy)
+        throws IOException {
+        HttpGet primary = newRequest(url);
+        TransferStats primaryStats = new TransferStats();
+        CompletableFuture<JsonNode> first = submit(primary, permitId, primaryStats, false, attemptExecutor());
+        long delayMs = Math.max(policy.getMinDelay().toMillis(), latencies.percentile(policy.getPercentile()));
+        try {
+            JsonNode node = first.get(delayMs, TimeUnit.MILLISECONDS);
+            stats.add(primaryStats);
+            return node;
+        } catch (TimeoutException e) {
+            // Slow response; consider hedging below
+        } catch (InterruptedException e) {
+            primary.abort();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for permit availability", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+
+        if (hedgeCount.sum() + 1 > policy.getMaxExtraRatio() * attemptCount.sum()) {
+            JsonNode node = await(first, primary);
+            stats.add(primaryStats);
+            return node;
+        }
+        HttpGet backup = newRequest(url);
+        backup.setConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(HEDGE_LEASE_TIMEOUT_MS)
+            .setConnectTimeout((int) timeout.toMillis())
+            .setSocketTimeout((int) timeout.toMillis())
+            .build());
+        TransferStats backupStats = new TransferStats();
+        CompletableFuture<JsonNode> second;
+        try {
+            second = submit(backup, permitId, backupStats, true, hedgeExecutor());
+        } catch (RejectedExecutionException e) {
+            // Every hedge slot is taken; a queued hedge could not beat the primary
+            logger.debug("No free hedge slot for {}, waiting for the first request", url);
+            JsonNode node = await(first, primary);
+            stats.add(primaryStats);
+            return node;
+        }
+        hedgeCount.increment();
+        logger.debug("No response from {} after {} ms, sent hedged request", url, delayMs);
+
+        CompletableFuture<JsonNode> winner = new CompletableFuture<>();
+        AtomicBoolean decided = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+        first.whenComplete((node, error) -> settle(winner, decided, node, error, failures, stats, primaryStats, false));
+        second.whenComplete((node, error) -> settle(winner, decided, node, error, failures, stats, backupStats, true));
+        try {
+            return winner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for permit availability", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            // Cancel the loser; aborting a finished request is a no-op
+            if (!first.isDone() || first.isCompletedExceptionally()) {
+                primary.abort();
+            }
+            if (!second.isDone() || second.isCompletedExceptionally()) {
+                backup.abort();
+            }
+        }
+    }
+
+    private void settle(CompletableFuture<JsonNode> winner, AtomicBoolean decided, JsonNode node, Throwable error,
+                        AtomicInteger failures, TransferStats stats, TransferStats attemptStats, boolean hedge) {
+        if (error == null) {
+            // Count the winner before releasing the caller, so its totals are in place when it returns
+            if (decided.compareAndSet(false, true)) {
+                stats.add(attemptStats);
+                if (hedge) {
+                    hedgeWinCount.increment();
+                }
+                winner.complete(node);
+            } else {
+                stats.discard(attemptStats);
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private CompletableFuture<JsonNode> submit(HttpGet request, String permitId, TransferStats stats,
+                                               boolean hedge, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(request, permitId, stats, hedge);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static JsonNode await(CompletableFuture<JsonNode> future, HttpGet request) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            request.abort();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for permit availability", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Runs the primary request of hedged attempts, one per pooled connection at a time.
+     */
+    private synchronized ExecutorService attemptExecutor() {
+        if (attemptExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            attemptExecutor = Executors.newFixedThreadPool(maxConnections, r -> {
+                Thread thread = new Thread(r, "recreation-gov-attempt-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return attemptExecutor;
+    }
+
+    /**
+     * Runs hedged requests. The pool has no queue: when every hedge connection is in use a
+     * new hedge is rejected rather than left waiting.
+     */
+    private synchronized ExecutorService hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            int slots = hedgeConnections(maxConnections);
+            hedgeExecutor = new ThreadPoolExecutor(slots, slots, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                Thread thread = new Thread(r, "recreation-gov-hedge-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return hedgeExecutor;
+    }
+
     private static <T extends Throwable> T findCause(Throwable throwable, Class<T> type) {
         Throwable current = throwable;
         while (current != null) {
@@ -127,10 +954,246 @@ public class RecreationGovClient {
         return null;
     }
 
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHitCount.sum();
+    }
+
+    public long getUpstreamFetchCount() {
+        return upstreamFetchCount.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    /**
+     * Returns the fraction of availability requests that were served without an upstream fetch.
+     */
+    public double getDedupRatio() {
+        long requests = requestCount.sum();
+        return requests == 0 ? 0.0 : 1.0 - (double) upstreamFetchCount.sum() / requests;
+    }
+
+    /**
+     * Dates watched for one permit and the windows derived from them.
+     * An unrestricted scope has no windows and fetches the whole season.
+     */
+    private static class DateScope {
+        private final Set<LocalDate> dates;
+        private final boolean unrestricted;
+        private final List<DateWindow> windows;
+
+        DateScope(Collection<LocalDate> dates) {
+            this(new TreeSet<>(dates), dates.isEmpty());
+        }
+
+        private DateScope(Set<LocalDate> dates, boolean unrestricted) {
+            this.dates = dates;
+            this.unrestricted = unrestricted;
+            this.windows = unrestricted
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(DateWindow.cover(dates, MAX_WINDOW_GAP_DAYS));
+        }
+
+        DateScope with(DateScope other) {
+            if (unrestricted || other.unrestricted) {
+                return new DateScope(dates, true);
+            }
+            Set<LocalDate> union = new TreeSet<>(dates);
+            union.addAll(other.dates);
+            return new DateScope(union, false);
+        }
+    }
+
+    /**
+     * Per-thread inflaters and input buffer, reset rather than reallocated between responses.
+     */
+    private static class DecodeBuffers {
+        private final Inflater zlib = new Inflater();
+        private final Inflater raw = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[INFLATE_BUFFER_SIZE];
+        private boolean inUse;
+    }
+
+    /**
+     * Inflates through a thread's {@link DecodeBuffers} and hands them back, reset, on close.
+     * For gzip bodies the CRC and length in the trailer are checked at the end of the data.
+     */
+    private static class ReusedInflaterStream extends InflaterInputStream {
+        private final DecodeBuffers buffers;
+        private final boolean gzip;
+        private boolean trailerChecked;
+        private boolean closed;
+
+        ReusedInflaterStream(InputStream in, DecodeBuffers buffers, boolean raw, boolean gzip) {
+            // The superclass allocates a buffer of the given size; it is replaced at once
+            super(in, raw ? buffers.raw : buffers.zlib, 1);
+            this.buf = buffers.input;
+            this.buffers = buffers;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (gzip) {
+                if (read > 0) {
+                    buffers.crc.update(buffer, offset, read);
+                } else if (read < 0 && !trailerChecked) {
+                    trailerChecked = true;
+                    checkGzipTrailer();
+                }
+            }
+            return read;
+        }
+
+        private void checkGzipTrailer() throws IOException {
+            byte[] trailer = new byte[8];
+            int buffered = Math.min(inf.getRemaining(), trailer.length);
+            System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, buffered);
+            for (int i = buffered; i < trailer.length; i++) {
+                trailer[i] = (byte) readByte(in);
+            }
+            long crc = littleEndianInt(trailer, 0);
+            long size = littleEndianInt(trailer, 4);
+            if (crc != buffers.crc.getValue() || size != (inf.getBytesWritten() & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        private static long littleEndianInt(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xFFL) | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16 | (bytes[offset + 3] & 0xFFL) << 24;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                inf.reset();
+                buffers.crc.reset();
+                buffers.inUse = false;
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it and fails once more than the limit has been read.
+     * The request is aborted before failing so the rest of the body is never drained.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final Runnable onLimitExceeded;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit, Runnable onLimitExceeded) {
+            super(in);
+            this.limit = limit;
+            this.onLimitExceeded = onLimitExceeded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                advance(read);
+            }
+            return read;
+        }
+
+        private void advance(long read) throws IOException {
+            count += read;
+            if (count > limit) {
+                if (onLimitExceeded != null) {
+                    onLimitExceeded.run();
+                }
+                throw new IOException("Response body exceeds the limit of " + limit + " bytes");
+            }
+        }
+    }
+
+    private static class CachedResult {
+        private final JsonNode node;
+        private final DateScope scope;
+        private final long fetchedAtNanos;
+
+        CachedResult(JsonNode node, DateScope scope, long fetchedAtNanos) {
+            this.node = node;
+            this.scope = scope;
+            this.fetchedAtNanos = fetchedAtNanos;
+        }
+    }
+
+    /**
+     * Identifies an in-flight fetch: the permit and the exact scope instance it fetches, so a
+     * caller never joins a fetch started before the permit's scope changed.
+     */
+    private static final class FlightKey {
+        private final String permitId;
+        private final DateScope scope;
+
+        FlightKey(String permitId, DateScope scope) {
+            this.permitId = permitId;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey other = (FlightKey) o;
+            return permitId.equals(other.permitId) && scope == other.scope;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * permitId.hashCode() + System.identityHashCode(scope);
+        }
+    }
+
     /**
      * Closes the HTTP client and releases any resources.
      */
     public void close() {
+        synchronized (this) {
+            if (bulkExecutor != null) {
+                bulkExecutor.shutdownNow();
+            }
+            if (attemptExecutor != null) {
+                attemptExecutor.shutdownNow();
+            }
+            if (hedgeExecutor != null) {
+                hedgeExecutor.shutdownNow();
+            }
+        }
         try {
             httpClient.close();
         } catch (IOException e) {
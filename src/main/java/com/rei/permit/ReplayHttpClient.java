@@ -0,0 +1,178 @@
+package com.rei.permit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP client that answers requests from a capture file written by
+ * {@link RecordingHttpClient} instead of the network. The capture is played back on a
+ * clock that starts with the first request and runs {@code speed} times faster than real
+ * time: each request gets the latest response recorded for its URL at or before the current
+ * point of the capture, after the recorded latency divided by the speed. URLs that were
+ * never recorded get a 404.
+ */
+public class ReplayHttpClient extends CloseableHttpClient {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayHttpClient.class);
+
+    private final Map<String, List<HttpCapture.Exchange>> exchangesByUrl = new HashMap<>();
+    private final double speed;
+    private final long firstRecordedAtMillis;
+    private final long lastRecordedAtMillis;
+    private volatile long startNanos;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final LongAdder servedCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates a replay client from a capture file.
+     *
+     * @param captureFile The capture file
+     * @param speed How many times faster than real time the capture is played back
+     * @throws IOException if the capture cannot be read or is empty
+     */
+    public ReplayHttpClient(Path captureFile, double speed) throws IOException {
+        this(HttpCapture.read(captureFile), speed);
+        logger.info("Replaying {} at {}x real time", captureFile, speed);
+    }
+
+    /**
+     * Creates a replay client from recorded exchanges.
+     *
+     * @param exchanges The recorded exchanges
+     * @param speed How many times faster than real time the capture is played back
+     * @throws IOException if there are no exchanges
+     */
+    public ReplayHttpClient(List<HttpCapture.Exchange> exchanges, double speed) throws IOException {
+        if (exchanges.isEmpty()) {
+            throw new IOException("Capture holds no exchanges");
+        }
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+        this.speed = speed;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (HttpCapture.Exchange exchange : exchanges) {
+            exchangesByUrl.computeIfAbsent(exchange.getUrl(), url -> new ArrayList<>()).add(exchange);
+            first = Math.min(first, exchange.getRecordedAtMillis());
+            last = Math.max(last, exchange.getRecordedAtMillis());
+        }
+        for (List<HttpCapture.Exchange> recorded : exchangesByUrl.values()) {
+            recorded.sort(Comparator.comparingLong(HttpCapture.Exchange::getRecordedAtMillis));
+        }
+        this.firstRecordedAtMillis = first;
+        this.lastRecordedAtMillis = last;
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+        throws IOException {
+        long captureMillis = captureTimeMillis();
+        String url = HttpCapture.urlOf(target, request);
+        List<HttpCapture.Exchange> recorded = exchangesByUrl.get(url);
+        if (recorded == null) {
+            missCount.increment();
+            logger.warn("No recorded response for {}", url);
+            return new HttpCapture.Exchange(captureMillis, 0, url, 404, "Not in capture",
+                Collections.emptyList(), null).toResponse();
+        }
+        HttpCapture.Exchange exchange = latestAtOrBefore(recorded, captureMillis);
+        long delayNanos = (long) (TimeUnit.MILLISECONDS.toNanos(exchange.getLatencyMillis()) / speed);
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying " + exchange.getUrl());
+            }
+        }
+        servedCount.increment();
+        return exchange.toResponse();
+    }
+
+    /**
+     * Returns the point of the capture being played back, in recorded epoch milliseconds.
+     */
+    private long captureTimeMillis() {
+        long now = System.nanoTime();
+        if (startNanos == 0) {
+            synchronized (this) {
+                if (startNanos == 0) {
+                    startNanos = now;
+                }
+            }
+        }
+        long captureMillis = firstRecordedAtMillis + (long) (TimeUnit.NANOSECONDS.toMillis(now - startNanos) * speed);
+        if (captureMillis > lastRecordedAtMillis && finished.compareAndSet(false, true)) {
+            logger.info("Replay reached the end of the capture; serving the last recorded responses from now on");
+        }
+        return captureMillis;
+    }
+
+    private static HttpCapture.Exchange latestAtOrBefore(List<HttpCapture.Exchange> recorded, long captureMillis) {
+        int low = 0;
+        int high = recorded.size() - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (recorded.get(mid).getRecordedAtMillis() <= captureMillis) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return recorded.get(found);
+    }
+
+    /**
+     * Whether playback has passed the last recorded exchange.
+     */
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    public long getServedCount() {
+        return servedCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public HttpParams getParams() {
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ClientConnectionManager getConnectionManager() {
+        return null;
+    }
+}
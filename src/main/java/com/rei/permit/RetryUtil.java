@@ -45,14 +45,20 @@ public class RetryUtil {
         long delay = initialDelayMs;
 
         while (true) {
+            FlightEvents.RetryAttempt attempt = new FlightEvents.RetryAttempt();
+            attempt.begin();
             try {
-                return operation.get();
+                T result = operation.get();
+                commit(attempt, retries + 1, null, 0);
+                return result;
             } catch (Exception e) {
                 retries++;
                 if (retries > maxRetries) {
+                    commit(attempt, retries, e, 0);
                     logger.error("Operation failed after {} retries", maxRetries, e);
                     throw new RuntimeException("Operation failed after " + maxRetries + " retries", e);
                 }
+                commit(attempt, retries, e, delay);
 
                 logger.warn("Operation failed, retrying in {} ms (attempt {}/{})", delay, retries, maxRetries);
                 try {
@@ -67,4 +73,15 @@ public class RetryUtil {
             }
         }
     }
+
+    private static void commit(FlightEvents.RetryAttempt attempt, int number, Exception error, long backoffMs) {
+        attempt.end();
+        if (attempt.shouldCommit()) {
+            attempt.attempt = number;
+            attempt.success = error == null;
+            attempt.error = error == null ? null : String.valueOf(error.getMessage());
+            attempt.backoffMs = backoffMs;
+            attempt.commit();
+        }
+    }
 } 
\ No newline at end of file
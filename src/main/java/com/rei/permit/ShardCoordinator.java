@@ -0,0 +1,153 @@
+package com.rei.permit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the permit catalog between checker nodes that share a lease directory.
+ * Every node keeps a {@code <nodeId>.lease} file fresh in the directory; nodes whose
+ * lease has not been renewed within the lease TTL are considered dead. Ownership of
+ * each permit is decided by a {@link ConsistentHashRing} over the live nodes, so when
+ * a node dies or joins only its share of the catalog moves.
+ */
+public class ShardCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+    private static final String LEASE_SUFFIX = ".lease";
+
+    private final Path leaseDirectory;
+    private final String nodeId;
+    private final Duration leaseTtl;
+    private final ScheduledExecutorService heartbeat;
+
+    private volatile Set<String> members = new TreeSet<>();
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * Creates a new coordinator. The node does not join until {@link #start()} is called.
+     *
+     * @param leaseDirectory Directory shared by all nodes of the cluster
+     * @param nodeId Unique ID of this node
+     * @param leaseTtl How long a lease stays valid without being renewed
+     */
+    public ShardCoordinator(Path leaseDirectory, String nodeId, Duration leaseTtl) {
+        this.leaseDirectory = leaseDirectory;
+        this.nodeId = nodeId;
+        this.leaseTtl = leaseTtl;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-heartbeat-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Joins the cluster and renews this node's lease in the background.
+     *
+     * @throws IOException if the lease directory cannot be written
+     */
+    public void start() throws IOException {
+        Files.createDirectories(leaseDirectory);
+        renewLease();
+        refresh();
+        long periodMs = Math.max(1, leaseTtl.toMillis() / 3);
+        heartbeat.scheduleAtFixedRate(() -> {
+            try {
+                renewLease();
+            } catch (IOException e) {
+                logger.error("Failed to renew lease for node {}: {}", nodeId, e.getMessage());
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        logger.info("Node {} joined cluster at {}", nodeId, leaseDirectory);
+    }
+
+    /**
+     * Leaves the cluster by removing this node's lease so the other nodes
+     * take over its permits on their next cycle.
+     */
+    public void stop() {
+        heartbeat.shutdownNow();
+        try {
+            Files.deleteIfExists(leaseFile());
+            logger.info("Node {} left cluster at {}", nodeId, leaseDirectory);
+        } catch (IOException e) {
+            logger.error("Failed to remove lease for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Re-reads the live members from the lease directory and rebuilds the ring if membership changed.
+     * Called at the start of every check cycle.
+     */
+    public void refresh() {
+        Set<String> live = new TreeSet<>();
+        Instant cutoff = Instant.now().minus(leaseTtl);
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(leaseDirectory, "*" + LEASE_SUFFIX)) {
+            for (Path lease : leases) {
+                try {
+                    if (Files.getLastModifiedTime(lease).toInstant().isAfter(cutoff)) {
+                        String name = lease.getFileName().toString();
+                        live.add(name.substring(0, name.length() - LEASE_SUFFIX.length()));
+                    }
+                } catch (IOException e) {
+                    // Lease removed by its node while we were listing
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read cluster membership from {}: {}", leaseDirectory, e.getMessage());
+            return;
+        }
+        // We are alive even if our own lease write is lagging
+        live.add(nodeId);
+
+        if (!live.equals(members)) {
+            logger.info("Cluster membership changed from {} to {}; rebalancing permits", members, live);
+            members = live;
+            ring = new ConsistentHashRing(live);
+        }
+    }
+
+    /**
+     * Returns whether this node is responsible for polling the given permit.
+     *
+     * @param permitId The permit ID
+     * @return true if this node owns the permit
+     */
+    public boolean owns(String permitId) {
+        ConsistentHashRing current = ring;
+        return current == null || nodeId.equals(current.nodeFor(permitId));
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private void renewLease() throws IOException {
+        Path lease = leaseFile();
+        if (Files.exists(lease)) {
+            Files.setLastModifiedTime(lease, FileTime.from(Instant.now()));
+        } else {
+            Files.write(lease, new byte[0]);
+        }
+    }
+
+    private Path leaseFile() {
+        return leaseDirectory.resolve(nodeId + LEASE_SUFFIX);
+    }
+}
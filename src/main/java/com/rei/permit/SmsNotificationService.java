@@ -1,57 +1,111 @@
 package com.rei.permit;
 
 import com.twilio.Twilio;
+import com.twilio.exception.ApiException;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.type.PhoneNumber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SmsNotificationService {
+import java.time.Duration;
+import java.time.LocalDate;
+
+/**
+ * Sends notifications as SMS messages through Twilio.
+ * Each instance carries its own sender and recipient numbers, so several
+ * services can coexist in one JVM. The Twilio credentials are process-wide.
+ * Alerts are queued on a {@link SmsSendScheduler} that respects the sender number's
+ * throughput limit and sends the most urgent alerts first. In test mode the scheduler is
+ * kept and only the Twilio call is replaced, so queueing, pacing and draining behave as in
+ * production.
+ */
+public class SmsNotificationService implements Notifier {
     private static final Logger logger = LoggerFactory.getLogger(SmsNotificationService.class);
-    private static final String ACCOUNT_SID = System.getenv("TWILIO_ACCOUNT_SID");
-    private static final String API_KEY_SID = System.getenv("TWILIO_API_KEY_SID");
-    private static final String API_KEY_SECRET = System.getenv("TWILIO_API_KEY_SECRET");
-    private static final String TWILIO_PHONE_NUMBER = System.getenv("TWILIO_PHONE_NUMBER");
-    private static final String NOTIFICATION_PHONE_NUMBER = System.getenv("NOTIFICATION_PHONE_NUMBER");
+
+    private final String accountSid;
+    private final String apiKeySid;
+    private final String apiKeySecret;
+    private final String twilioPhoneNumber;
+    private final String notificationPhoneNumber;
 
     // Test mode controls (enabled when -Dsms.test.mode=true)
     private static boolean isTestMode() {
         return Boolean.parseBoolean(System.getProperty("sms.test.mode", "false"));
     }
-    private static volatile String lastMessageBodyForTesting;
+    private volatile String lastMessageBodyForTesting;
+    private volatile SmsSendScheduler sendScheduler;
+
+    /**
+     * Creates a new SmsNotificationService configured from the TWILIO_* and
+     * NOTIFICATION_PHONE_NUMBER environment variables.
+     */
+    public SmsNotificationService() {
+        this(System.getenv("TWILIO_ACCOUNT_SID"),
+            System.getenv("TWILIO_API_KEY_SID"),
+            System.getenv("TWILIO_API_KEY_SECRET"),
+            System.getenv("TWILIO_PHONE_NUMBER"),
+            System.getenv("NOTIFICATION_PHONE_NUMBER"));
+    }
+
+    /**
+     * Creates a new SmsNotificationService with explicit credentials and numbers.
+     *
+     * @param accountSid The Twilio account SID
+     * @param apiKeySid The Twilio API key SID
+     * @param apiKeySecret The Twilio API key secret
+     * @param twilioPhoneNumber The number messages are sent from
+     * @param notificationPhoneNumber The number messages are sent to
+     */
+    public SmsNotificationService(String accountSid, String apiKeySid, String apiKeySecret,
+                                  String twilioPhoneNumber, String notificationPhoneNumber) {
+        this.accountSid = accountSid;
+        this.apiKeySid = apiKeySid;
+        this.apiKeySecret = apiKeySecret;
+        this.twilioPhoneNumber = twilioPhoneNumber;
+        this.notificationPhoneNumber = notificationPhoneNumber;
+    }
 
     /**
      * Initializes the SMS notification service and validates the configuration.
      * @throws IllegalStateException if the configuration is invalid
      */
-    public static void initialize() {
-        if (isTestMode()) {
+    public void initialize() {
+        boolean testMode = isTestMode();
+        if (!testMode) {
+            validateConfiguration();
+            Twilio.init(apiKeySid, apiKeySecret, accountSid);
+        }
+        sendScheduler = new SmsSendScheduler(testMode ? "test" : twilioPhoneNumber,
+            Config.getSmsRatePerSecond(),
+            Config.getSmsMaxAttempts(),
+            Duration.ofMillis(Config.getSmsBackoffInitialMs()),
+            Duration.ofMillis(Config.getSmsBackoffMaxMs()),
+            this::sendMessage);
+        if (testMode) {
             logger.info("SMS notification service initialized in TEST MODE (Twilio disabled)");
-            return;
+        } else {
+            logger.info("SMS notification service initialized successfully");
         }
-        validateConfiguration();
-        Twilio.init(API_KEY_SID, API_KEY_SECRET, ACCOUNT_SID);
-        logger.info("SMS notification service initialized successfully");
     }
 
     /**
      * Validates the SMS notification configuration.
      * @throws IllegalStateException if any required configuration is missing
      */
-    private static void validateConfiguration() {
-        if (ACCOUNT_SID == null || ACCOUNT_SID.trim().isEmpty()) {
+    private void validateConfiguration() {
+        if (accountSid == null || accountSid.trim().isEmpty()) {
             throw new IllegalStateException("TWILIO_ACCOUNT_SID environment variable is not set");
         }
-        if (API_KEY_SID == null || API_KEY_SID.trim().isEmpty()) {
+        if (apiKeySid == null || apiKeySid.trim().isEmpty()) {
             throw new IllegalStateException("TWILIO_API_KEY_SID environment variable is not set");
         }
-        if (API_KEY_SECRET == null || API_KEY_SECRET.trim().isEmpty()) {
+        if (apiKeySecret == null || apiKeySecret.trim().isEmpty()) {
             throw new IllegalStateException("TWILIO_API_KEY_SECRET environment variable is not set");
         }
-        if (TWILIO_PHONE_NUMBER == null || TWILIO_PHONE_NUMBER.trim().isEmpty()) {
+        if (twilioPhoneNumber == null || twilioPhoneNumber.trim().isEmpty()) {
             throw new IllegalStateException("TWILIO_PHONE_NUMBER environment variable is not set");
         }
-        if (NOTIFICATION_PHONE_NUMBER == null || NOTIFICATION_PHONE_NUMBER.trim().isEmpty()) {
+        if (notificationPhoneNumber == null || notificationPhoneNumber.trim().isEmpty()) {
             throw new IllegalStateException("NOTIFICATION_PHONE_NUMBER environment variable is not set");
         }
     }
@@ -60,58 +114,118 @@ public class SmsNotificationService {
      * Sends a test SMS to verify the configuration.
      * @return true if the test message was sent successfully
      */
-    public static boolean sendTestMessage() {
+    public boolean sendTestMessage() {
         try {
             String messageBody = "Test message from Permit Status Checker. If you receive this, SMS notifications are working correctly!";
-            return sendMessage(messageBody);
+            return sendMessage(messageBody) != null;
         } catch (Exception e) {
             logger.error("Failed to send test SMS", e);
             return false;
         }
     }
 
+    @Override
+    public void notifyPermitAvailable(Permit permit, PermitAvailability availability, String message) {
+        notifyPermitAvailable(permit, availability, message, null);
+    }
+
+    @Override
+    public void notifyPermitAvailable(Permit permit, PermitAvailability availability, String message,
+                                      AlertTrace trace) {
+        send(permit.getId(), message, SmsSendScheduler.priorityOf(availability, LocalDate.now()), trace);
+    }
+
     /**
      * Sends a notification about permit availability.
      * @param permitId The ID of the permit
      * @param message The message to send
      */
-    public static void sendPermitAvailableNotification(String permitId, String message) {
+    public void sendPermitAvailableNotification(String permitId, String message) {
+        send(permitId, message, SmsSendScheduler.LOWEST_PRIORITY, null);
+    }
+
+    private void send(String permitId, String message, long priority, AlertTrace trace) {
+        SmsSendScheduler scheduler = sendScheduler;
+        if (scheduler != null) {
+            if (!scheduler.enqueue(message, priority, trace)) {
+                logger.error("SMS service is shut down, dropping notification for permit {}", permitId);
+            }
+            return;
+        }
         try {
-            sendMessage(message);
+            if (trace != null) {
+                trace.mark(AlertTrace.Stage.ENQUEUED);
+            }
+            String messageSid = sendMessage(message);
+            if (trace != null) {
+                trace.complete(messageSid);
+            }
         } catch (Exception e) {
             logger.error("Failed to send permit availability notification for permit {}: {}", permitId, e.getMessage());
         }
     }
 
+    /**
+     * Stops accepting notifications and waits for the queued ones to be sent.
+     *
+     * @param drainTimeout Maximum time to wait
+     * @return true if every queued notification was handled within the timeout
+     */
+    public boolean shutdown(Duration drainTimeout) {
+        SmsSendScheduler scheduler = sendScheduler;
+        return scheduler == null || scheduler.stop(drainTimeout);
+    }
+
     /**
      * Sends an SMS message.
      * @param messageBody The message to send
-     * @return true if the message was sent successfully
+     * @return The Twilio message SID
      * @throws Exception if there's an error sending the message
      */
-    private static boolean sendMessage(String messageBody) throws Exception {
-        if (isTestMode()) {
-            lastMessageBodyForTesting = messageBody;
-            logger.info("[TEST MODE] SMS notification would be sent: {}", messageBody);
-            return true;
-        }
+    private String sendMessage(String messageBody) throws Exception {
+        FlightEvents.SmsSend event = new FlightEvents.SmsSend();
+        event.begin();
+        String messageSid = null;
+        int statusCode = 0;
         try {
+            if (isTestMode()) {
+                lastMessageBodyForTesting = messageBody;
+                logger.info("[TEST MODE] SMS notification would be sent: {}", messageBody);
+                messageSid = "TEST";
+                return messageSid;
+            }
             Message message = Message.creator(
-                new PhoneNumber(NOTIFICATION_PHONE_NUMBER),
-                new PhoneNumber(TWILIO_PHONE_NUMBER),
+                new PhoneNumber(notificationPhoneNumber),
+                new PhoneNumber(twilioPhoneNumber),
                 messageBody)
                 .create();
 
-            logger.info("SMS notification sent successfully. Message SID: {}", message.getSid());
-            return true;
+            messageSid = message.getSid();
+            logger.info("SMS notification sent successfully. Message SID: {}", messageSid);
+            return messageSid;
         } catch (Exception e) {
-            logger.error("Failed to send SMS: {}", e.getMessage());
+            if (e instanceof ApiException && ((ApiException) e).getStatusCode() != null) {
+                statusCode = ((ApiException) e).getStatusCode();
+            }
+            logger.debug("Failed to send SMS: {}", e.getMessage());
             throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.success = messageSid != null;
+                event.statusCode = statusCode;
+                event.messageSid = messageSid;
+                event.commit();
+            }
         }
     }
 
-    // Test helper: returns last message when in test mode
-    static String getLastMessageBodyForTesting() {
+    // Test helper: waits for queued messages to be sent, then returns the last one sent in test mode
+    String getLastMessageBodyForTesting() {
+        SmsSendScheduler scheduler = sendScheduler;
+        if (scheduler != null) {
+            scheduler.awaitDrained(Duration.ofSeconds(5));
+        }
         return lastMessageBodyForTesting;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,271 @@
+package com.rei.permit;
+
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queues outbound SMS messages for one sender number and sends them no faster than
+ * the number's throughput limit. Alerts for the soonest and scarcest dates go first.
+ * Messages rejected with 429 or a server error are retried with exponential backoff;
+ * a 429 also pauses the whole sender, since it means the number itself is over its limit.
+ */
+public class SmsSendScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(SmsSendScheduler.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    /** Priority of messages that are not about a specific date; sent after every alert. */
+    public static final long LOWEST_PRIORITY = Long.MAX_VALUE;
+
+    /**
+     * Delivers one message to the provider.
+     */
+    public interface Sender {
+        /**
+         * @return The provider's ID of the accepted message
+         */
+        String send(String messageBody) throws Exception;
+    }
+
+    private final String senderNumber;
+    private final Sender sender;
+    private final long sendIntervalNanos;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final PriorityBlockingQueue<OutboundMessage> queue = new PriorityBlockingQueue<>();
+    private final ScheduledExecutorService retryTimer;
+    private final Thread worker;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LatencyTracker queueDelays = new LatencyTracker(256);
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+    private long nextSendNanos = System.nanoTime();
+    private volatile boolean stopped;
+
+    /**
+     * Creates a scheduler and starts its sending thread.
+     *
+     * @param senderNumber The sender number, used in thread names and logs
+     * @param messagesPerSecond Maximum send rate of the sender number
+     * @param maxAttempts Attempts per message before it is dropped
+     * @param initialBackoff Delay before the first retry; doubled on every further retry
+     * @param maxBackoff Upper bound of the retry delay
+     * @param sender Delivers messages to the provider
+     */
+    public SmsSendScheduler(String senderNumber, double messagesPerSecond, int maxAttempts,
+                            Duration initialBackoff, Duration maxBackoff, Sender sender) {
+        this.senderNumber = senderNumber;
+        this.sender = sender;
+        this.sendIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sms-retry-" + senderNumber);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker = new Thread(this::run, "sms-sender-" + senderNumber);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Computes the priority of an alert: sooner dates first, and for the same date the
+     * permit with fewer remaining first. Lower values are sent earlier.
+     *
+     * @param availability The availability the alert is about
+     * @param today The current date
+     * @return The priority
+     */
+    public static long priorityOf(PermitAvailability availability, LocalDate today) {
+        long date = DateTargets.parseEpochDay(availability.getAvailableDate());
+        if (date == DateTargets.INVALID_DAY) {
+            return LOWEST_PRIORITY - 1;
+        }
+        long daysAway = Math.max(0, date - today.toEpochDay());
+        return daysAway * 1000 + Math.min(999, Math.max(0, availability.getRemainingPermits()));
+    }
+
+    /**
+     * Queues a message.
+     *
+     * @param messageBody The message to send
+     * @param priority The priority from {@link #priorityOf}; lower is sent first
+     * @return false if the scheduler is stopped and the message was not queued
+     */
+    public boolean enqueue(String messageBody, long priority) {
+        return enqueue(messageBody, priority, null);
+    }
+
+    /**
+     * Queues a traced message; the trace is completed when the provider accepts it.
+     *
+     * @param messageBody The message to send
+     * @param priority The priority from {@link #priorityOf}; lower is sent first
+     * @param trace The trace of the alert, or null
+     * @return false if the scheduler is stopped and the message was not queued
+     */
+    public boolean enqueue(String messageBody, long priority, AlertTrace trace) {
+        if (stopped) {
+            return false;
+        }
+        pending.incrementAndGet();
+        if (trace != null) {
+            trace.mark(AlertTrace.Stage.ENQUEUED);
+        }
+        queue.add(new OutboundMessage(messageBody, priority, sequence.incrementAndGet(), trace));
+        return true;
+    }
+
+    /**
+     * Stops accepting messages and waits for the queued ones to be sent.
+     *
+     * @param drainTimeout Maximum time to wait
+     * @return true if every queued message was handled within the timeout
+     */
+    public boolean stop(Duration drainTimeout) {
+        stopped = true;
+        boolean drained = awaitDrained(drainTimeout);
+        if (!drained) {
+            logger.warn("Dropping {} unsent SMS messages from {}", pending.get(), senderNumber);
+        }
+        worker.interrupt();
+        retryTimer.shutdownNow();
+        return drained;
+    }
+
+    /**
+     * Waits until every queued message has been sent or given up on, without stopping.
+     *
+     * @param timeout Maximum time to wait
+     * @return true if nothing was pending when the wait ended
+     */
+    public boolean awaitDrained(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return pending.get() == 0;
+    }
+
+    private void run() {
+        while (true) {
+            OutboundMessage message;
+            try {
+                // Wait for the slot before picking the message, so an urgent alert queued meanwhile goes first
+                awaitSendSlot();
+                message = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            nextSendNanos = System.nanoTime() + sendIntervalNanos;
+            send(message);
+        }
+    }
+
+    private void awaitSendSlot() throws InterruptedException {
+        long waitNanos = nextSendNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void send(OutboundMessage message) {
+        message.attempts++;
+        try {
+            String messageId = sender.send(message.body);
+            if (message.trace != null) {
+                message.trace.complete(messageId);
+            }
+            long queuedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - message.enqueuedNanos);
+            queueDelays.record(queuedMs);
+            sentCount.increment();
+            pending.decrementAndGet();
+            logger.info("SMS from {} sent after {} ms in queue (attempt {}, priority {})",
+                senderNumber, queuedMs, message.attempts, message.priority);
+        } catch (Exception e) {
+            Integer status = e instanceof ApiException ? ((ApiException) e).getStatusCode() : null;
+            boolean retryable = e instanceof ApiConnectionException
+                || (status != null && (status == TOO_MANY_REQUESTS || status >= 500));
+            if (!retryable || message.attempts >= maxAttempts) {
+                failedCount.increment();
+                pending.decrementAndGet();
+                logger.error("Giving up on SMS from {} after {} attempts: {}", senderNumber, message.attempts, e.getMessage());
+                return;
+            }
+            long backoffMs = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << (message.attempts - 1));
+            if (status != null && status == TOO_MANY_REQUESTS) {
+                // The sender number is over its limit; hold every message, not just this one
+                throttledCount.increment();
+                nextSendNanos = Math.max(nextSendNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs));
+            }
+            logger.warn("SMS from {} failed ({}), retrying in {} ms (attempt {}/{})",
+                senderNumber, e.getMessage(), backoffMs, message.attempts, maxAttempts);
+            retryTimer.schedule(() -> queue.add(message), backoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Percentiles of the time messages spent queued before they were sent.
+     */
+    public LatencyTracker getQueueDelays() {
+        return queueDelays;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    private static class OutboundMessage implements Comparable<OutboundMessage> {
+        private final String body;
+        private final long priority;
+        private final long sequence;
+        private final AlertTrace trace;
+        private final long enqueuedNanos = System.nanoTime();
+        private int attempts;
+
+        OutboundMessage(String body, long priority, long sequence, AlertTrace trace) {
+            this.body = body;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.trace = trace;
+        }
+
+        @Override
+        public int compareTo(OutboundMessage other) {
+            int byPriority = Long.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
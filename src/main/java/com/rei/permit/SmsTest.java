@@ -4,10 +4,11 @@ public class SmsTest {
     public static void main(String[] args) {
         try {
             System.out.println("Initializing SMS notification service...");
-            SmsNotificationService.initialize();
+            SmsNotificationService notificationService = new SmsNotificationService();
+            notificationService.initialize();
             
             System.out.println("Sending test SMS message...");
-            boolean success = SmsNotificationService.sendTestMessage();
+            boolean success = notificationService.sendTestMessage();
             
             if (success) {
                 System.out.println("Test SMS sent successfully! Please check your phone.");
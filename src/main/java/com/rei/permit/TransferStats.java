@@ -0,0 +1,85 @@
+package com.rei.permit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the availability responses received for one permit:
+ * bytes on the wire, bytes after decompression and time spent decoding.
+ * Only responses that were used are counted; a hedged request that lost the race
+ * is counted separately as discarded.
+ */
+public class TransferStats {
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAdder discardedResponses = new LongAdder();
+    private final LongAdder discardedWireBytes = new LongAdder();
+
+    void record(long wire, long decoded, long nanos) {
+        responses.increment();
+        wireBytes.add(wire);
+        decodedBytes.add(decoded);
+        decodeNanos.add(nanos);
+    }
+
+    /**
+     * Adds the totals of one attempt whose response was used.
+     */
+    void add(TransferStats attempt) {
+        responses.add(attempt.responses.sum());
+        wireBytes.add(attempt.wireBytes.sum());
+        decodedBytes.add(attempt.decodedBytes.sum());
+        decodeNanos.add(attempt.decodeNanos.sum());
+    }
+
+    /**
+     * Counts the responses of an attempt that was read in full but lost a hedging race.
+     */
+    void discard(TransferStats attempt) {
+        discardedResponses.add(attempt.responses.sum());
+        discardedWireBytes.add(attempt.wireBytes.sum());
+    }
+
+    public long getResponseCount() {
+        return responses.sum();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    public long getDecodeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(decodeNanos.sum());
+    }
+
+    /**
+     * Responses of hedged requests that arrived after the other request had already won.
+     */
+    public long getDiscardedResponseCount() {
+        return discardedResponses.sum();
+    }
+
+    public long getDiscardedWireBytes() {
+        return discardedWireBytes.sum();
+    }
+
+    /**
+     * Fraction of bytes saved by compression, 0 when nothing was compressed.
+     */
+    public double getCompressionRatio() {
+        long decoded = decodedBytes.sum();
+        return decoded == 0 ? 0.0 : 1.0 - (double) wireBytes.sum() / decoded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d responses, %d bytes on wire, %d bytes decoded, %d ms decoding, %d discarded",
+            getResponseCount(), getWireBytes(), getDecodedBytes(), getDecodeMillis(), getDiscardedResponseCount());
+    }
+}
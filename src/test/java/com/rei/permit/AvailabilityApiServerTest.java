@@ -0,0 +1,315 @@
+package com.rei.permit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailabilityApiServerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Permit enchantments = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+    private final Permit whitney = new Permit("445859", "Mount Whitney", "https://www.recreation.gov/permits/445859", "2024-07-20");
+    private AvailabilityBoard board;
+    private AvailabilityEventStream events;
+    private AvailabilityApiServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        board = new AvailabilityBoard();
+        events = new AvailabilityEventStream(100, 16, 4);
+        server = new AvailabilityApiServer(board, events, new InetSocketAddress("127.0.0.1", 0), 2);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void availabilityBoard_OnlyPublishesChanges() {
+        board.record(enchantments, Collections.emptyList());
+        long version = board.getSnapshot().getVersion();
+        byte[] json = board.getSnapshot().toJson();
+
+        assertNotNull(board.record(enchantments, Collections.emptyList()));
+        assertEquals(version, board.getSnapshot().getVersion());
+        assertSame(json, board.getSnapshot().toJson(), "unchanged snapshot should reuse its serialized form");
+
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2)));
+        assertEquals(version + 1, board.getSnapshot().getVersion());
+    }
+
+    @Test
+    void availabilityBoard_NotifiesChangesInVersionOrder() throws Exception {
+        List<AvailabilityBoard.PermitStatus> delivered = new ArrayList<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        board.addListener((previous, current) -> {
+            // Each change must start from the status delivered just before it
+            AvailabilityBoard.PermitStatus last = delivered.isEmpty() ? null : delivered.get(delivered.size() - 1);
+            if (previous != last) {
+                outOfOrder.incrementAndGet();
+            }
+            delivered.add(current);
+        });
+        ExecutorService pollers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 2000; i++) {
+            int remaining = i;
+            pollers.execute(() -> board.record(enchantments,
+                Arrays.asList(new PermitAvailability(true, "2024-08-01", remaining))));
+        }
+        pollers.shutdown();
+        assertTrue(pollers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, outOfOrder.get());
+        assertSame(board.getSnapshot().getStatuses().iterator().next(), delivered.get(delivered.size() - 1));
+    }
+
+    @Test
+    void getPermits_ServesLatestSnapshot() throws Exception {
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2, 1, "A")));
+        board.record(whitney, Collections.emptyList());
+
+        HttpURLConnection all = open("/permits");
+        assertEquals(200, all.getResponseCode());
+        JsonNode permits = read(all).get("permits");
+        assertEquals(2, permits.size());
+        assertEquals("233260", permits.get(0).get("id").asText());
+        assertEquals("2024-08-01", permits.get(0).get("available").get(0).get("date").asText());
+        assertEquals("A", permits.get(0).get("available").get(0).get("division").asText());
+
+        HttpURLConnection one = open("/permits/445859");
+        assertEquals(200, one.getResponseCode());
+        JsonNode single = read(one).get("permits");
+        assertEquals(1, single.size());
+        assertEquals(0, single.get(0).get("available").size());
+
+        assertEquals(404, open("/permits/999999").getResponseCode());
+    }
+
+    @Test
+    void getPermits_ReturnsNotModifiedUntilAvailabilityChanges() throws Exception {
+        board.record(enchantments, Collections.emptyList());
+        HttpURLConnection first = open("/permits");
+        assertEquals(200, first.getResponseCode());
+        String etag = first.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        HttpURLConnection unchanged = open("/permits");
+        unchanged.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, unchanged.getResponseCode());
+
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 1)));
+        HttpURLConnection changed = open("/permits");
+        changed.setRequestProperty("If-None-Match", etag);
+        assertEquals(200, changed.getResponseCode());
+        assertNotEquals(etag, changed.getHeaderField("ETag"));
+    }
+
+    @Test
+    void getPermit_TagsWithPermitVersion() throws Exception {
+        board.record(enchantments, Collections.emptyList());
+        board.record(whitney, Collections.emptyList());
+        HttpURLConnection first = open("/permits/233260");
+        assertEquals(200, first.getResponseCode());
+        String etag = first.getHeaderField("ETag");
+        assertEquals(1, read(first).get("version").asLong());
+
+        // Another permit changing must not invalidate this one
+        board.record(whitney, Arrays.asList(new PermitAvailability(true, "2024-07-20", 3)));
+        HttpURLConnection unchanged = open("/permits/233260");
+        unchanged.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, unchanged.getResponseCode());
+
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 1)));
+        HttpURLConnection changed = open("/permits/233260");
+        changed.setRequestProperty("If-None-Match", etag);
+        assertEquals(200, changed.getResponseCode());
+        assertEquals("\"4\"", changed.getHeaderField("ETag"));
+    }
+
+    @Test
+    void getPermits_MatchesIfNoneMatchLists() throws Exception {
+        board.record(enchantments, Collections.emptyList());
+        String etag = open("/permits").getHeaderField("ETag");
+
+        for (String header : Arrays.asList("W/" + etag, "\"99\", " + etag, "\"a,b\",W/" + etag, "*")) {
+            HttpURLConnection connection = open("/permits");
+            connection.setRequestProperty("If-None-Match", header);
+            assertEquals(304, connection.getResponseCode(), header);
+        }
+        for (String header : Arrays.asList("\"99\", W/\"12\"", "\"1", "W/1", "\"" + etag + "\"")) {
+            HttpURLConnection connection = open("/permits");
+            connection.setRequestProperty("If-None-Match", header);
+            assertEquals(200, connection.getResponseCode(), header);
+        }
+    }
+
+    @Test
+    void events_PushesFilteredChangesToSubscriber() throws Exception {
+        HttpURLConnection connection = open("/events?permits=233260");
+        connection.setReadTimeout(5000);
+        assertEquals(200, connection.getResponseCode());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        waitForSubscribers(1);
+
+        board.record(whitney, Arrays.asList(new PermitAvailability(true, "2024-07-20", 3)));
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2)));
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 1)));
+        board.record(enchantments, Collections.emptyList());
+
+        JsonNode opened = readEvent(reader, "opened");
+        assertEquals("233260", opened.get("permitId").asText());
+        assertEquals(2, opened.get("remaining").asInt());
+        JsonNode changed = readEvent(reader, "changed");
+        assertEquals(1, changed.get("remaining").asInt());
+        assertEquals(2, changed.get("previousRemaining").asInt());
+        JsonNode closed = readEvent(reader, "closed");
+        assertEquals("2024-08-01", closed.get("date").asText());
+        connection.disconnect();
+    }
+
+    @Test
+    void events_ResumeFromLastEventId() throws Exception {
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2)));
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 1)));
+        board.record(enchantments, Collections.emptyList());
+
+        HttpURLConnection connection = open("/events");
+        connection.setRequestProperty("Last-Event-ID", events.getEpoch() + "-1");
+        connection.setReadTimeout(5000);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+
+        assertEquals(events.getEpoch() + "-2", readEvent(reader, "changed").get("id").asText());
+        assertEquals(events.getEpoch() + "-3", readEvent(reader, "closed").get("id").asText());
+        connection.disconnect();
+    }
+
+    @Test
+    void events_ResynchronizesSubscriberResumingFromAnotherProcess() throws Exception {
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2)));
+        board.record(whitney, Collections.emptyList());
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 1),
+            new PermitAvailability(true, "2024-08-03", 4)));
+
+        // An ID from before a restart: its sequence exists here too, but in another epoch
+        HttpURLConnection connection = open("/events");
+        connection.setRequestProperty("Last-Event-ID", "1000-1");
+        connection.setReadTimeout(5000);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+
+        readEvent(reader, "reset");
+        JsonNode first = readEvent(reader, "opened");
+        assertEquals("2024-08-01", first.get("date").asText());
+        assertEquals(1, first.get("remaining").asInt());
+        assertEquals(events.getEpoch() + "-3", first.get("id").asText());
+        assertEquals("2024-08-03", readEvent(reader, "opened").get("date").asText());
+        connection.disconnect();
+    }
+
+    @Test
+    void events_ResynchronizesSubscriberOlderThanHistory() {
+        AvailabilityEventStream shortHistory = new AvailabilityEventStream(2, 16, 4, "7");
+        board.addListener(shortHistory);
+        for (int remaining = 1; remaining <= 4; remaining++) {
+            board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", remaining)));
+        }
+
+        assertFalse(shortHistory.subscribe(Collections.emptySet(), "7-2").isResync());
+        AvailabilityEventStream.Subscriber resumed = shortHistory.subscribe(Collections.emptySet(), "7-1");
+        assertTrue(resumed.isResync());
+        assertEquals(1, resumed.getMissedEvents().size());
+        assertEquals(4, resumed.getMissedEvents().get(0).getAvailability().getRemainingPermits());
+        assertTrue(shortHistory.subscribe(Collections.emptySet(), "7-x").isResync());
+    }
+
+    @Test
+    void events_ClosesOpenItinerariesOfDroppedPermits() throws Exception {
+        board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", 2),
+            new PermitAvailability(true, "2024-08-02", 1)));
+        board.record(whitney, Arrays.asList(new PermitAvailability(true, "2024-07-20", 3)));
+        AvailabilityEventStream.Subscriber subscriber = events.subscribe(Collections.emptySet(), null);
+
+        board.retain(Arrays.asList(whitney));
+
+        AvailabilityEvent first = subscriber.poll(1000);
+        AvailabilityEvent second = subscriber.poll(1000);
+        assertEquals(AvailabilityEvent.Type.CLOSED, first.getType());
+        assertEquals("2024-08-01", first.getAvailability().getAvailableDate());
+        assertEquals(AvailabilityEvent.Type.CLOSED, second.getType());
+        assertEquals("2024-08-02", second.getAvailability().getAvailableDate());
+        assertNull(subscriber.poll(0));
+        subscriber.close();
+
+        // A resynchronized subscriber no longer sees the dropped permit either
+        AvailabilityEventStream.Subscriber resynced = events.subscribe(Collections.emptySet(), "0-0");
+        assertEquals(1, resynced.getMissedEvents().size());
+        assertEquals("445859", resynced.getMissedEvents().get(0).getPermit().getId());
+    }
+
+    @Test
+    void events_DropsSlowSubscriber() throws Exception {
+        AvailabilityEventStream smallBuffers = new AvailabilityEventStream(100, 2, 4);
+        board.addListener(smallBuffers);
+        AvailabilityEventStream.Subscriber subscriber = smallBuffers.subscribe(Collections.emptySet(), null);
+        for (int remaining = 1; remaining <= 3; remaining++) {
+            board.record(enchantments, Arrays.asList(new PermitAvailability(true, "2024-08-01", remaining)));
+        }
+
+        assertTrue(subscriber.isOverflowed());
+        assertEquals(0, smallBuffers.getSubscriberCount());
+        // Buffered events can still be drained before disconnecting
+        assertEquals(1, subscriber.poll(0).getSequence());
+    }
+
+    private void waitForSubscribers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.getSubscriberCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, events.getSubscriberCount());
+    }
+
+    private JsonNode readEvent(BufferedReader reader, String expectedType) throws Exception {
+        String type = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("event: ")) {
+                type = line.substring("event: ".length());
+            } else if (line.startsWith("data: ")) {
+                assertEquals(expectedType, type);
+                return objectMapper.readTree(line.substring("data: ".length()));
+            }
+        }
+        throw new AssertionError("Stream ended before a " + expectedType + " event");
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+    }
+
+    private JsonNode read(HttpURLConnection connection) throws Exception {
+        try (InputStream in = connection.getInputStream()) {
+            return objectMapper.readTree(in);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.rei.permit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CycleSchedulerTest {
+
+    @Test
+    void stop_WaitsForRunningCycle() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+        CycleScheduler scheduler = new CycleScheduler("test", () -> {
+            started.countDown();
+            sleep(200);
+            finished.incrementAndGet();
+        }, Duration.ofMinutes(1), CycleScheduler.OverrunPolicy.SKIP);
+
+        scheduler.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.stop(Duration.ofSeconds(2)));
+        assertEquals(1, finished.get());
+        assertTrue(scheduler.isStopped());
+    }
+
+    @Test
+    void stop_InterruptsCycleAfterDrainTimeout() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CycleScheduler scheduler = new CycleScheduler("test", () -> {
+            started.countDown();
+            sleep(10_000);
+        }, Duration.ofMinutes(1), CycleScheduler.OverrunPolicy.SKIP);
+
+        scheduler.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertFalse(scheduler.stop(Duration.ofMillis(100)));
+    }
+
+    @Test
+    void start_KeepsJvmAliveUntilStopped() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger daemons = new AtomicInteger();
+        CycleScheduler scheduler = new CycleScheduler("test", () -> {
+            if (Thread.currentThread().isDaemon()) {
+                daemons.incrementAndGet();
+            }
+            started.countDown();
+        }, Duration.ofMinutes(1), CycleScheduler.OverrunPolicy.SKIP);
+
+        scheduler.start();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        scheduler.stop(Duration.ofSeconds(1));
+
+        assertEquals(0, daemons.get());
+    }
+
+    @Test
+    void overrun_SkipDropsTicks() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CycleScheduler scheduler = new CycleScheduler("test", () -> {
+            runs.incrementAndGet();
+            sleep(250);
+        }, Duration.ofMillis(50), CycleScheduler.OverrunPolicy.SKIP);
+
+        scheduler.start();
+        Thread.sleep(400);
+        scheduler.stop(Duration.ofSeconds(1));
+
+        assertTrue(scheduler.getOverrunCount() > 0);
+        // Overlapping ticks never queue up extra runs
+        assertTrue(runs.get() <= 3, "runs=" + runs.get());
+    }
+
+    @Test
+    void overrun_CoalesceRunsOneCatchUpCycle() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch twoRuns = new CountDownLatch(2);
+        CycleScheduler scheduler = new CycleScheduler("test", () -> {
+            runs.incrementAndGet();
+            twoRuns.countDown();
+            if (runs.get() == 1) {
+                sleep(300);
+            }
+        }, Duration.ofMillis(100), CycleScheduler.OverrunPolicy.COALESCE);
+
+        scheduler.start();
+        assertTrue(twoRuns.await(1, TimeUnit.SECONDS));
+        scheduler.stop(Duration.ofSeconds(1));
+
+        assertTrue(scheduler.getOverrunCount() >= 2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
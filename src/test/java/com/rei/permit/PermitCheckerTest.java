@@ -2,25 +2,46 @@ package com.rei.permit;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class PermitCheckerTest {
     private ObjectMapper objectMapper;
+    private SmsNotificationService notificationService;
 
     @BeforeEach
     void setUp() {
         objectMapper = new ObjectMapper();
         System.setProperty("sms.test.mode", "true");
-        SmsNotificationService.initialize();
+        notificationService = new SmsNotificationService();
+        notificationService.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        notificationService.shutdown(java.time.Duration.ofSeconds(5));
+    }
+
+    private PermitChecker newChecker(RecreationGovClient client, Permit permit) {
+        return new PermitChecker(client, new PermitCatalog(Arrays.asList(permit)),
+            new InMemoryNotificationStore(), notificationService);
     }
 
     @Test
@@ -51,15 +72,14 @@ public class PermitCheckerTest {
                 return jsonNode;
             }
         };
-        PermitChecker.setApiClientForTesting(stubClient);
+        PermitChecker checker = newChecker(stubClient, permit);
 
         // Execute
-        SmsNotificationServiceTestHelper.clearLastMessage();
-        PermitChecker.checkPermitAvailability(permit);
+        checker.checkPermitAvailability(permit);
 
         // Verify SMS was "sent" in test mode
-        assertNotNull(SmsNotificationService.getLastMessageBodyForTesting());
-        assertTrue(SmsNotificationService.getLastMessageBodyForTesting().contains("2024-08-01"));
+        assertNotNull(notificationService.getLastMessageBodyForTesting());
+        assertTrue(notificationService.getLastMessageBodyForTesting().contains("2024-08-01"));
     }
 
     @Test
@@ -89,12 +109,11 @@ public class PermitCheckerTest {
                 return jsonNode;
             }
         };
-        PermitChecker.setApiClientForTesting(stubClient);
+        PermitChecker checker = newChecker(stubClient, permit);
 
-        SmsNotificationServiceTestHelper.clearLastMessage();
-        PermitChecker.checkPermitAvailability(permit);
+        checker.checkPermitAvailability(permit);
 
-        assertNull(SmsNotificationService.getLastMessageBodyForTesting());
+        assertNull(notificationService.getLastMessageBodyForTesting());
     }
 
     @Test
@@ -114,23 +133,286 @@ public class PermitCheckerTest {
                 throw new IOException("API Error");
             }
         };
-        PermitChecker.setApiClientForTesting(stubClient);
+        PermitChecker checker = newChecker(stubClient, permit);
 
-        SmsNotificationServiceTestHelper.clearLastMessage();
-        assertThrows(IOException.class, () -> PermitChecker.checkPermitAvailability(permit));
-        assertNull(SmsNotificationService.getLastMessageBodyForTesting());
+        assertThrows(IOException.class, () -> checker.checkPermitAvailability(permit));
+        assertNull(notificationService.getLastMessageBodyForTesting());
     }
-}
 
-// Helper to reset captured message between tests
-class SmsNotificationServiceTestHelper {
-    static void clearLastMessage() {
-        System.setProperty("sms.test.mode", "true");
-        // Reset by sending an empty message
-        try {
-            java.lang.reflect.Field f = com.rei.permit.SmsNotificationService.class.getDeclaredField("lastMessageBodyForTesting");
-            f.setAccessible(true);
-            f.set(null, null);
-        } catch (Exception ignored) {}
+    @Test
+    void checkers_ShareClientWithIsolatedState() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260",
+            "2024-08-01");
+        JsonNode jsonNode = objectMapper.readTree(
+            "{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}");
+        RecreationGovClient sharedClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                return jsonNode;
+            }
+        };
+
+        SmsNotificationService firstNotifier = new SmsNotificationService();
+        SmsNotificationService secondNotifier = new SmsNotificationService();
+        PermitChecker first = new PermitChecker(sharedClient, new PermitCatalog(Arrays.asList(permit)),
+            new InMemoryNotificationStore(), firstNotifier);
+        PermitChecker second = new PermitChecker(sharedClient, new PermitCatalog(Arrays.asList(permit)),
+            new InMemoryNotificationStore(), secondNotifier);
+
+        first.checkAllPermits();
+        second.checkPermitAvailability(permit);
+
+        // Each checker has its own dedup state, so both tenants are alerted
+        assertNotNull(firstNotifier.getLastMessageBodyForTesting());
+        assertNotNull(secondNotifier.getLastMessageBodyForTesting());
+    }
+
+    @Test
+    void checkAllPermits_ReportsWhetherEveryPermitWasChecked() throws Exception {
+        Permit good = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        Permit bad = new Permit("445859", "Mount Whitney", "https://www.recreation.gov/permits/445859", "2024-08-01");
+        JsonNode jsonNode = objectMapper.readTree("{\"availability\": []}");
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) throws IOException {
+                if (id.equals(bad.getId())) {
+                    throw new IOException("API Error");
+                }
+                return jsonNode;
+            }
+        };
+
+        assertTrue(newChecker(stubClient, good).checkAllPermits());
+        assertFalse(new PermitChecker(stubClient, new PermitCatalog(Arrays.asList(good, bad)),
+            new InMemoryNotificationStore(), notificationService).checkAllPermits());
+        stubClient.close();
+    }
+
+    @Test
+    void checkAllPermits_CountsUnwritableNotificationStoreAsFailure() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01,2024-08-03");
+        JsonNode jsonNode = objectMapper.readTree("{\"availability\": [" +
+            "{\"date\": \"2024-08-01\", \"remaining\": 2}, {\"date\": \"2024-08-03\", \"remaining\": 2}]}");
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                return jsonNode;
+            }
+        };
+        NotificationStore store = new InMemoryNotificationStore() {
+            @Override
+            public boolean markNotified(String key) {
+                if (key.contains("2024-08-01")) {
+                    throw new UncheckedIOException(new IOException("disk full"));
+                }
+                return super.markNotified(key);
+            }
+        };
+
+        PermitChecker checker = new PermitChecker(stubClient, new PermitCatalog(Arrays.asList(permit)),
+            store, notificationService);
+        assertFalse(checker.checkAllPermits());
+        stubClient.close();
+
+        // The other date is still alerted
+        assertTrue(notificationService.getLastMessageBodyForTesting().contains("2024-08-03"));
+    }
+
+    @Test
+    void checkAllPermits_TracesAlertFromFetchToDelivery() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        JsonNode jsonNode = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}");
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                return jsonNode;
+            }
+        };
+        PermitChecker checker = newChecker(stubClient, permit);
+
+        checker.checkAllPermits();
+        stubClient.close();
+        assertTrue(notificationService.shutdown(java.time.Duration.ofSeconds(5)));
+
+        AlertTracer tracer = checker.getAlertTracer();
+        assertEquals(1, tracer.getTotalLatency().getSampleCount());
+        AlertTrace trace = tracer.getSlowest().get(0);
+        assertEquals("233260", trace.getPermitId());
+        assertEquals("2024-08-01", trace.getDate());
+        assertEquals("TEST", trace.getMessageSid());
+        for (AlertTrace.Stage stage : AlertTrace.Stage.values()) {
+            if (stage != AlertTrace.Stage.FETCH_START) {
+                assertTrue(trace.getStageNanos(stage) >= 0, "missing stage " + stage);
+            }
+        }
+        assertTrue(trace.getTotalNanos() >= 0);
+    }
+
+    @Test
+    void updateCatalog_EvaluatesChangedTargetsAgainstLastAvailability() throws Exception {
+        String url = "https://www.recreation.gov/permits/233260";
+        Permit enchantments = new Permit("233260", "Enchantments", url, "2024-08-01,2024-08-03");
+        Permit whitney = new Permit("445859", "Mount Whitney", "https://www.recreation.gov/permits/445859", "2024-08-01");
+        JsonNode jsonNode = objectMapper.readTree("{\"availability\": [" +
+            "{\"date\": \"2024-08-01\", \"remaining\": 0}," +
+            "{\"date\": \"2024-08-02\", \"remaining\": 3}," +
+            "{\"date\": \"2024-08-03\", \"remaining\": 0}]}");
+        AtomicInteger fetches = new AtomicInteger();
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                fetches.incrementAndGet();
+                return jsonNode;
+            }
+        };
+        PermitChecker checker = new PermitChecker(stubClient, new PermitCatalog(Arrays.asList(enchantments, whitney)),
+            new InMemoryNotificationStore(), notificationService);
+        checker.checkAllPermits();
+        assertNull(notificationService.getLastMessageBodyForTesting());
+        assertEquals(2, fetches.get());
+
+        // 2024-08-02 lies inside the window already fetched, so no request is needed
+        checker.updateCatalog(Arrays.asList(
+            new Permit("233260", "Enchantments", url, "2024-08-01..2024-08-03"), whitney)).get(5, TimeUnit.SECONDS);
+        assertEquals(2, fetches.get());
+        assertTrue(notificationService.getLastMessageBodyForTesting().contains("2024-08-02"));
+
+        // A date outside the fetched windows needs a fetch of that permit only
+        checker.updateCatalog(Arrays.asList(
+            new Permit("233260", "Enchantments", url, "2024-08-01..2024-08-03,2024-10-01"), whitney))
+            .get(5, TimeUnit.SECONDS);
+        assertEquals(3, fetches.get());
+        assertEquals(2, checker.getAvailabilityBoard().getSnapshot().getStatuses().size());
+        stubClient.close();
     }
-} 
\ No newline at end of file
+
+    @Test
+    void updateCatalog_DropsResultsOfRemovedPermitsFromCycleInFlight() throws Exception {
+        Permit enchantments = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        Permit whitney = new Permit("445859", "Mount Whitney", "https://www.recreation.gov/permits/445859", "2024-08-01");
+        JsonNode open = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}");
+        JsonNode closed = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 0}]}");
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) throws IOException {
+                if (!id.equals(enchantments.getId())) {
+                    return closed;
+                }
+                fetching.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return open;
+            }
+        };
+        PermitChecker checker = newChecker(stubClient, enchantments);
+        Thread cycle = new Thread(checker::checkAllPermits);
+        cycle.start();
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+
+        checker.updateCatalog(Arrays.asList(whitney)).get(5, TimeUnit.SECONDS);
+        release.countDown();
+        cycle.join(5000);
+        stubClient.close();
+
+        // The late result for the removed permit neither alerts nor reappears on the board
+        assertNull(notificationService.getLastMessageBodyForTesting());
+        assertEquals(1, checker.getAvailabilityBoard().getSnapshot().getStatuses().size());
+        assertSame(whitney, checker.getAvailabilityBoard().getSnapshot().getStatuses().iterator().next().getPermit());
+    }
+
+    @Test
+    void checkAllPermits_InterruptedCycleNotifiesNothingLater() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        JsonNode open = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}");
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fetched = new CountDownLatch(1);
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                fetching.countDown();
+                // Like a socket read, the fetch does not notice the cycle being interrupted
+                boolean released = false;
+                while (!released) {
+                    try {
+                        released = release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // Keep waiting
+                    }
+                }
+                fetched.countDown();
+                return open;
+            }
+        };
+        PermitChecker checker = newChecker(stubClient, permit);
+        AtomicInteger outcome = new AtomicInteger(-1);
+        Thread cycle = new Thread(() -> outcome.set(checker.checkAllPermits() ? 1 : 0));
+        cycle.start();
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+
+        cycle.interrupt();
+        cycle.join(5000);
+        assertFalse(cycle.isAlive());
+        assertEquals(0, outcome.get());
+
+        // The fetch finishes after the cycle gave up, when the notifier may already be shut down
+        release.countDown();
+        assertTrue(fetched.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        stubClient.close();
+        assertNull(notificationService.getLastMessageBodyForTesting());
+        assertTrue(checker.getAvailabilityBoard().getSnapshot().getStatuses().isEmpty());
+    }
+
+    @Test
+    void openKeys_SurviveBetweenSingleShotRuns(@TempDir Path stateDir) throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        JsonNode open = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}");
+        JsonNode closed = objectMapper.readTree("{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 0}]}");
+        Deque<JsonNode> responses = new ArrayDeque<>(Arrays.asList(open, closed, open));
+        RecreationGovClient stubClient = new RecreationGovClient(1, java.time.Duration.ofSeconds(1)) {
+            @Override
+            public JsonNode getPermitAvailability(String id) {
+                return responses.poll();
+            }
+        };
+        NotificationStore store = new InMemoryNotificationStore();
+        Path openKeysFile = stateDir.resolve("open-keys");
+
+        // Each run is a fresh checker, as with one process per run
+        AtomicInteger alerts = new AtomicInteger();
+        for (int run = 0; run < 3; run++) {
+            PermitChecker checker = new PermitChecker(stubClient, new PermitCatalog(Arrays.asList(permit)),
+                store, (p, availability, message) -> alerts.incrementAndGet());
+            checker.loadOpenKeys(openKeysFile);
+            checker.checkAllPermits();
+            checker.saveOpenKeys(openKeysFile);
+        }
+        stubClient.close();
+
+        // Open, closed, open again: the reopening is alerted
+        assertEquals(2, alerts.get());
+    }
+
+    @Test
+    void permitCatalog_FromProperties() {
+        java.util.Properties properties = new java.util.Properties();
+        properties.setProperty("permit.whitney.id", "445859");
+        properties.setProperty("permit.whitney.name", "Mount Whitney");
+        properties.setProperty("permit.whitney.dates", "2024-07-20");
+        properties.setProperty("permit.enchantments.id", "233260");
+        properties.setProperty("permit.enchantments.name", "Enchantments");
+
+        PermitCatalog catalog = PermitCatalog.fromProperties(properties);
+
+        assertEquals(2, catalog.size());
+        assertEquals("233260", catalog.getPermits().get(0).getId());
+        assertEquals("445859", catalog.getPermits().get(1).getId());
+        assertTrue(catalog.getPermits().get(1).hasTargetDates());
+    }
+}
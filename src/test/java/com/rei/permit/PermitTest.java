@@ -1,9 +1,13 @@
 package com.rei.permit;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -97,4 +101,103 @@ class PermitTest {
         assertEquals(expectedDates, permit.getTargetDates());
         assertTrue(permit.hasTargetDates());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testPermitCreationWithTargetExpression() {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260",
+            "2024-07-01..2024-07-31@FRI+SAT, !2024-07-05, 2024-08-10");
+
+        DateTargets targets = permit.getTargets();
+        assertTrue(targets.matches(LocalDate.parse("2024-07-06")));  // Saturday
+        assertTrue(targets.matches(LocalDate.parse("2024-07-12")));  // Friday
+        assertFalse(targets.matches(LocalDate.parse("2024-07-05"))); // Friday, excluded
+        assertFalse(targets.matches(LocalDate.parse("2024-07-08"))); // Monday
+        assertTrue(targets.matches(LocalDate.parse("2024-08-10")));
+        // Fridays and Saturdays in July minus the exclusion, plus one August date
+        assertEquals(4 + 4 - 1 + 1, permit.getTargetDates().size());
+    }
+
+    @Test
+    void testExclusionOnlyExpressionIsRejected() {
+        // Empty targets would watch every date, the opposite of what was asked for
+        assertThrows(IllegalArgumentException.class, () -> DateTargets.parse("!2024-08-03"));
+        assertThrows(IllegalArgumentException.class, () -> DateTargets.parse("2024-08-03,!2024-08-01..2024-08-05"));
+        assertEquals(1, DateTargets.parse("2024-08-02..2024-08-03,!2024-08-02").toDates().size());
+    }
+
+    @Test
+    void testParseEpochDay() {
+        assertEquals(LocalDate.parse("2024-02-29").toEpochDay(), DateTargets.parseEpochDay("2024-02-29"));
+        assertEquals(LocalDate.parse("1999-12-31").toEpochDay(), DateTargets.parseEpochDay("1999-12-31T00:00:00Z"));
+        assertEquals(DateTargets.INVALID_DAY, DateTargets.parseEpochDay("2023-02-29"));
+        assertEquals(DateTargets.INVALID_DAY, DateTargets.parseEpochDay("invalid-date"));
+    }
+
+    @Test
+    void testMultiNightMatching() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260",
+            "2024-08-01..2024-08-10, nights=3, min=2");
+        JsonNode json = new ObjectMapper().readTree(
+            "{\"availability\": [" +
+                "{\"date\": \"2024-08-01\", \"remaining\": 2}," +
+                "{\"date\": \"2024-08-02\", \"remaining\": 1}," +
+                "{\"date\": \"2024-08-03\", \"remaining\": 4}," +
+                "{\"date\": \"2024-08-04\", \"remaining\": 3}," +
+                "{\"date\": \"2024-08-05\", \"remaining\": 2}," +
+                "{\"date\": \"2024-08-06\", \"remaining\": 5}]}");
+
+        List<PermitAvailability> matches = AvailabilityMatcher.findMatches(json, permit.getTargets());
+
+        // 08-03..08-06 is open with at least 2 left, so 3-night trips can start on 08-03 or 08-04
+        assertEquals(2, matches.size());
+        assertEquals("2024-08-03", matches.get(0).getAvailableDate());
+        assertEquals(3, matches.get(0).getNights());
+        assertEquals(2, matches.get(0).getRemainingPermits());
+        assertEquals("2024-08-04", matches.get(1).getAvailableDate());
+        assertEquals(2, matches.get(1).getRemainingPermits());
+    }
+
+    @Test
+    void testConsecutiveOpenDatesEachMatch() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260",
+            "2024-07-15..2024-07-17");
+        JsonNode json = new ObjectMapper().readTree(
+            "{\"availability\": [" +
+                "{\"date\": \"2024-07-15\", \"remaining\": 2}," +
+                "{\"date\": \"2024-07-16\", \"remaining\": 1}," +
+                "{\"date\": \"2024-07-17\", \"remaining\": 3}]}");
+
+        List<PermitAvailability> matches = AvailabilityMatcher.findMatches(json, permit.getTargets());
+
+        assertEquals(3, matches.size());
+        assertEquals("2024-07-15", matches.get(0).getAvailableDate());
+        assertEquals("2024-07-16", matches.get(1).getAvailableDate());
+        assertEquals(1, matches.get(1).getRemainingPermits());
+        assertEquals("2024-07-17", matches.get(2).getAvailableDate());
+    }
+
+    @Test
+    void testDivisionIndexOnlyMatchesWatchedDivisions() throws Exception {
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260",
+            "2024-08-01..2024-08-02", "core");
+        JsonNode json = new ObjectMapper().readTree(
+            "{\"payload\": {\"availability\": {" +
+                "\"core\": {\"date_availability\": {" +
+                    "\"2024-07-31T00:00:00Z\": {\"remaining\": 9}," +
+                    "\"2024-08-01T00:00:00Z\": {\"remaining\": 0}," +
+                    "\"2024-08-02T00:00:00Z\": {\"remaining\": 1}," +
+                    "\"2024-08-03T00:00:00Z\": {\"remaining\": 9}}}," +
+                "\"snow\": {\"date_availability\": {" +
+                    "\"2024-08-01T00:00:00Z\": {\"remaining\": 5}}}}}}");
+
+        AvailabilityIndex index = AvailabilityIndex.build(json, permit.getDivisions(), permit.getTargets());
+        assertEquals(Collections.singleton("core"), index.getDivisions());
+        assertEquals(AvailabilityIndex.UNKNOWN, index.getRemaining("core", LocalDate.parse("2024-07-31").toEpochDay()));
+        assertEquals(1, index.getRemaining("core", LocalDate.parse("2024-08-02").toEpochDay()));
+
+        List<PermitAvailability> matches = AvailabilityMatcher.findMatches(index, permit.getTargets());
+        assertEquals(1, matches.size());
+        assertEquals("core", matches.get(0).getDivision());
+        assertEquals("2024-08-02", matches.get(0).getAvailableDate());
+    }
+}
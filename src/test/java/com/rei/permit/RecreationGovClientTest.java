@@ -3,21 +3,48 @@ package com.rei.permit;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.*;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.conn.ClientConnectionManager;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -98,6 +125,578 @@ class RecreationGovClientTest {
         assertEquals("2024-08-01", result.get("availability").get(0).get("date").asText());
     }
 
+    @Test
+    void getPermitAvailability_CoalescesConcurrentCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                executions.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        List<Future<JsonNode>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(() -> client.getPermitAvailability("233260")));
+        }
+        while (client.getCoalescedCount() < 3) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        JsonNode first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<JsonNode> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        assertEquals(1, executions.get());
+        assertEquals(3, client.getCoalescedCount());
+        assertEquals(0.75, client.getDedupRatio(), 0.001);
+    }
+
+    @Test
+    void getPermitAvailability_ServesCachedResultWithinTtl() throws Exception {
+        CloseableHttpResponse ok = new SimpleCloseableHttpResponse(
+            new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+            new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8)
+        );
+        TestHttpClient httpClient = new TestHttpClient(ok);
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+        client.setResultCacheTtl(Duration.ofMinutes(1));
+
+        JsonNode first = client.getPermitAvailability("233260");
+        // A second upstream request would get the "No more responses" 500
+        assertSame(first, client.getPermitAvailability("233260"));
+        assertEquals(1, client.getCacheHitCount());
+        assertEquals(1, client.getUpstreamFetchCount());
+    }
+
+    @Test
+    void getPermitAvailability_DiscardsResultFetchedForReplacedScope() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                String uri = request.getRequestLine().getUri();
+                if (executions.incrementAndGet() == 1) {
+                    firstStarted.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String date = uri.substring(uri.indexOf("start_date=") + "start_date=".length(), uri.indexOf('&'));
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": [{\"date\": \"" + date + "\", \"remaining\": 1}]}",
+                        StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(5));
+        client.setResultCacheTtl(Duration.ofMinutes(1));
+        Object owner = new Object();
+        client.setDateScope(owner, "233260", Arrays.asList(LocalDate.parse("2024-07-15")));
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<JsonNode> stale = caller.submit(() -> client.getPermitAvailability("233260"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        // The scope changes while the old fetch is in flight: don't join it, fetch the new windows
+        client.setDateScope(owner, "233260", Arrays.asList(LocalDate.parse("2024-09-01")));
+        JsonNode fresh = client.getPermitAvailability("233260");
+        release.countDown();
+
+        assertEquals("2024-07-15", stale.get(5, TimeUnit.SECONDS).get("availability").get(0).get("date").asText());
+        assertEquals("2024-09-01", fresh.get("availability").get(0).get("date").asText());
+        // The late old-scope result must not replace the current one in the cache
+        assertSame(fresh, client.getPermitAvailability("233260"));
+        assertEquals(0, client.getCoalescedCount());
+        assertEquals(2, client.getUpstreamFetchCount());
+        caller.shutdown();
+        client.close();
+    }
+
+    @Test
+    void getPermitAvailability_BulkIsolatesFailures() throws Exception {
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                if (request.getRequestLine().getUri().contains("/500500/")) {
+                    return new SimpleCloseableHttpResponse(
+                        new BasicStatusLine(HttpVersion.HTTP_1_1, 500, "Internal Server Error"), null);
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+
+        Map<String, AvailabilityResult> results = new ConcurrentHashMap<>();
+        client.getPermitAvailability(Arrays.asList("233260", "500500", "445859", "233260"),
+            result -> results.put(result.getPermitId(), result)).get(5, TimeUnit.SECONDS);
+        client.close();
+
+        assertEquals(3, results.size());
+        assertTrue(results.get("233260").isSuccess());
+        assertTrue(results.get("445859").isSuccess());
+        assertFalse(results.get("500500").isSuccess());
+        assertInstanceOf(IOException.class, results.get("500500").getError());
+    }
+
+    @Test
+    void getPermitAvailability_BulkPacesRequests() throws Exception {
+        List<Long> sentAt = new ArrayList<>();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                synchronized (sentAt) {
+                    sentAt.add(System.nanoTime());
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+        client.setRequestInterval(Duration.ofMillis(100));
+
+        client.getPermitAvailability(Arrays.asList("233260", "445859", "500500"), result -> { })
+            .get(5, TimeUnit.SECONDS);
+        client.close();
+
+        // Three permits fetched concurrently still start at least one interval apart
+        assertEquals(3, sentAt.size());
+        sentAt.sort(null);
+        for (int i = 1; i < sentAt.size(); i++) {
+            assertTrue(sentAt.get(i) - sentAt.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(90),
+                "requests " + (i - 1) + " and " + i + " were not paced");
+        }
+    }
+
+    @Test
+    void getPermitAvailability_FetchesOnlyWatchedDateWindows() throws Exception {
+        List<String> uris = new ArrayList<>();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                String uri = request.getRequestLine().getUri();
+                uris.add(uri);
+                String date = uri.substring(uri.indexOf("start_date=") + "start_date=".length(), uri.indexOf('&'));
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": [{\"date\": \"" + date + "\", \"remaining\": 1}]}",
+                        StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+        client.addDateScope("233260", Arrays.asList(
+            LocalDate.parse("2024-07-15"), LocalDate.parse("2024-07-17"), LocalDate.parse("2024-09-01")));
+
+        JsonNode result = client.getPermitAvailability("233260");
+
+        assertEquals(Arrays.asList(
+            "https://www.recreation.gov/api/permits/233260/availability?start_date=2024-07-15&end_date=2024-07-17",
+            "https://www.recreation.gov/api/permits/233260/availability?start_date=2024-09-01&end_date=2024-09-01"),
+            uris);
+        assertEquals(2, result.get("availability").size());
+        assertEquals("2024-09-01", result.get("availability").get(1).get("date").asText());
+
+        // A checker watching every date widens the scope to the whole season
+        client.addDateScope("233260", new ArrayList<>());
+        assertTrue(client.getDateWindows("233260").isEmpty());
+    }
+
+    @Test
+    void setDateScope_ReplacesOwnerDatesAndKeepsOthers() {
+        RecreationGovClient client = new RecreationGovClient(new TestHttpClient(), 0, Duration.ofSeconds(1));
+        Object first = new Object();
+        Object second = new Object();
+        client.setDateScope(first, "233260", Arrays.asList(LocalDate.parse("2024-07-15"), LocalDate.parse("2024-09-01")));
+        client.setDateScope(second, "233260", Arrays.asList(LocalDate.parse("2024-08-01")));
+        assertEquals(3, client.getDateWindows("233260").size());
+
+        // Dropping a date narrows the fetch again, without losing the other owner's date
+        client.setDateScope(first, "233260", Arrays.asList(LocalDate.parse("2024-07-15")));
+        assertEquals(Arrays.asList(
+            new DateWindow(LocalDate.parse("2024-07-15"), LocalDate.parse("2024-07-15")),
+            new DateWindow(LocalDate.parse("2024-08-01"), LocalDate.parse("2024-08-01"))),
+            client.getDateWindows("233260"));
+
+        client.setDateScope(second, "233260", new ArrayList<>());
+        assertTrue(client.getDateWindows("233260").isEmpty());
+        client.removeDateScope(second, "233260");
+        assertEquals(1, client.getDateWindows("233260").size());
+        client.removeDateScope(first, "233260");
+        assertTrue(client.getDateWindows("233260").isEmpty());
+        client.close();
+    }
+
+    @Test
+    void getPermitAvailability_HedgesSlowRequest() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                if (executions.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(5));
+        client.setHedgePolicy(new HedgePolicy(95, Duration.ofMillis(50), 1.0));
+
+        long start = System.nanoTime();
+        JsonNode result = client.getPermitAvailability("233260");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        client.close();
+
+        assertTrue(result.has("availability"));
+        assertTrue(elapsedMs < 1500, "hedged request should win, took " + elapsedMs + " ms");
+        assertEquals(1, client.getHedgeCount());
+        assertEquals(1, client.getHedgeWinCount());
+        // Only the winning response is counted; the slow one arrives later and is discarded
+        TransferStats stats = client.getTransferStats("233260");
+        assertEquals(1, stats.getResponseCount());
+        assertEquals("{\"availability\": []}".length(), stats.getWireBytes());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stats.getDiscardedResponseCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, stats.getDiscardedResponseCount());
+        assertEquals(1, stats.getResponseCount());
+    }
+
+    @Test
+    void getPermitAvailability_HedgeBudgetLimitsExtraRequests() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                executions.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(5));
+        client.setHedgePolicy(new HedgePolicy(50, Duration.ofMillis(10), 0.25));
+
+        for (int i = 0; i < 8; i++) {
+            client.getPermitAvailability("233260");
+        }
+        client.close();
+
+        // Every request is slow enough to hedge, but only a quarter of them may be
+        assertTrue(client.getHedgeCount() <= 2, "hedges=" + client.getHedgeCount());
+    }
+
+    @Test
+    void getPermitAvailability_BulkSkipsHedgesWhenHedgeConnectionsAreBusy() throws Exception {
+        List<Integer> leaseTimeouts = new CopyOnWriteArrayList<>();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                RequestConfig config = ((HttpGet) request).getConfig();
+                if (config != null) {
+                    leaseTimeouts.add(config.getConnectionRequestTimeout());
+                }
+                try {
+                    Thread.sleep(400);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SimpleCloseableHttpResponse(
+                    new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8));
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(5));
+        client.setHedgePolicy(new HedgePolicy(95, Duration.ofMillis(50), 1.0));
+        List<AvailabilityResult> results = new CopyOnWriteArrayList<>();
+
+        client.getPermitAvailability(Arrays.asList("1", "2", "3", "4", "5", "6"), results::add).get(10, TimeUnit.SECONDS);
+        client.close();
+
+        // Every primary is slow, but only the reserved hedge connections may be raced
+        assertEquals(6, results.stream().filter(AvailabilityResult::isSuccess).count());
+        assertEquals(RecreationGovClient.hedgeConnections(10), client.getHedgeCount());
+        assertEquals(client.getHedgeCount(), leaseTimeouts.size());
+        assertTrue(leaseTimeouts.stream().allMatch(ms -> ms > 0 && ms < 5000), leaseTimeouts.toString());
+    }
+
+    @Test
+    void getPermitAvailability_DecodesGzipResponse() throws Exception {
+        StringBuilder json = new StringBuilder("{\"availability\": [");
+        for (int day = 1; day <= 28; day++) {
+            json.append(day > 1 ? "," : "").append(String.format("{\"date\": \"2024-08-%02d\", \"remaining\": 2}", day));
+        }
+        json.append("]}");
+        ByteArrayEntity entity = new ByteArrayEntity(gzip(json.toString()));
+        entity.setContentEncoding("gzip");
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                executions.incrementAndGet();
+                assertEquals("gzip, deflate", request.getFirstHeader("Accept-Encoding").getValue());
+                return new SimpleCloseableHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), entity);
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+
+        JsonNode result = client.getPermitAvailability("233260");
+
+        assertEquals(1, executions.get());
+        assertEquals(28, result.get("availability").size());
+        TransferStats stats = client.getTransferStats("233260");
+        assertEquals(1, stats.getResponseCount());
+        assertEquals(entity.getContentLength(), stats.getWireBytes());
+        assertEquals(json.length(), stats.getDecodedBytes());
+        assertTrue(stats.getCompressionRatio() > 0.5, stats.toString());
+    }
+
+    @Test
+    void getPermitAvailability_DecodesZlibAndRawDeflateResponses() throws Exception {
+        String json = "{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}";
+        for (boolean raw : new boolean[] {false, true}) {
+            ByteArrayEntity entity = new ByteArrayEntity(deflate(json, raw));
+            entity.setContentEncoding("deflate");
+            RecreationGovClient client = new RecreationGovClient(new TestHttpClient(new SimpleCloseableHttpResponse(
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), entity)), 0, Duration.ofSeconds(1));
+
+            assertEquals(objectMapper.readTree(json), client.getPermitAvailability("233260"), "raw=" + raw);
+            client.close();
+        }
+    }
+
+    @Test
+    void getPermitAvailability_ReusesInflaterAcrossResponses() throws Exception {
+        StringBuilder json = new StringBuilder("{\"availability\": [");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i > 0 ? "," : "").append(String.format("{\"date\": \"2024-08-%02d\", \"remaining\": %d}",
+                i % 28 + 1, i * 7919 % 1000));
+        }
+        json.append("]}");
+        String[] encodings = {"gzip", "deflate", "deflate", "gzip", "gzip"};
+        byte[][] bodies = {gzipWithFileName(json.toString()), deflate(json.toString(), false),
+            deflate(json.toString(), true), gzip(json.toString()), gzip("{\"availability\": []}")};
+        AtomicInteger executions = new AtomicInteger();
+        TestHttpClient httpClient = new TestHttpClient() {
+            @Override
+            protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) {
+                int i = executions.getAndIncrement();
+                ByteArrayEntity entity = new ByteArrayEntity(bodies[i]);
+                entity.setContentEncoding(encodings[i]);
+                return new SimpleCloseableHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), entity);
+            }
+        };
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+
+        // Every response leaves this thread's inflater reset for the next one
+        for (int i = 0; i < bodies.length - 1; i++) {
+            assertEquals(2000, client.getPermitAvailability("233260").get("availability").size(), encodings[i]);
+        }
+        assertEquals(0, client.getPermitAvailability("233260").get("availability").size());
+        client.close();
+    }
+
+    @Test
+    void getPermitAvailability_RejectsOversizedBody() {
+        StringBuilder json = new StringBuilder("{\"availability\": [");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i > 0 ? "," : "").append("{\"date\": \"2024-08-01\", \"remaining\": 2}");
+        }
+        json.append("]}");
+        // Hide the length so the limit has to be enforced while reading
+        TestHttpClient httpClient = new TestHttpClient(new SimpleCloseableHttpResponse(
+            new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), new StringEntity(json.toString(), StandardCharsets.UTF_8) {
+                @Override
+                public long getContentLength() {
+                    return -1;
+                }
+            }));
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+        client.setMaxBodyBytes(1024);
+
+        IOException e = assertThrows(IOException.class, () -> client.getPermitAvailability("233260"));
+        assertTrue(e.getMessage().contains("exceeds the limit"), e.getMessage());
+    }
+
+    @Test
+    void getPermitAvailability_EmitsFlightRecorderEvents() throws Exception {
+        TestHttpClient httpClient = new TestHttpClient(new SimpleCloseableHttpResponse(
+            new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+            new StringEntity("{\"availability\": []}", StandardCharsets.UTF_8)));
+        RecreationGovClient client = new RecreationGovClient(httpClient, 0, Duration.ofSeconds(1));
+        Path dump = Files.createTempFile("permit-checker", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(FlightEvents.HttpCall.class);
+            recording.enable(FlightEvents.AvailabilityRequest.class);
+            recording.start();
+            client.getPermitAvailability("233260");
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        RecordedEvent call = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.rei.permit.HttpCall")).findFirst().orElseThrow();
+        assertEquals("233260", call.getString("permitId"));
+        assertEquals(200, call.getInt("statusCode"));
+        assertFalse(call.getBoolean("hedged"));
+        RecordedEvent request = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.rei.permit.AvailabilityRequest")).findFirst().orElseThrow();
+        assertEquals("upstream", request.getString("source"));
+        assertTrue(request.getBoolean("success"));
+    }
+
+    @Test
+    void getPermitAvailability_ReplaysRecordedResponses() throws Exception {
+        String json = "{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 2}]}";
+        ByteArrayEntity entity = new ByteArrayEntity(gzip(json));
+        entity.setContentEncoding("gzip");
+        Path capture = Files.createTempFile("recreation-gov", ".capture");
+        try {
+            RecordingHttpClient recorder = new RecordingHttpClient(new TestHttpClient(new SimpleCloseableHttpResponse(
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), entity)), capture);
+            RecreationGovClient recording = new RecreationGovClient(recorder, 0, Duration.ofSeconds(1));
+            assertEquals(2, recording.getPermitAvailability("233260").get("availability").get(0).get("remaining").asInt());
+            recording.close();
+
+            List<HttpCapture.Exchange> exchanges = HttpCapture.read(capture);
+            assertEquals(1, exchanges.size());
+            assertEquals("https://www.recreation.gov/api/permits/233260/availability", exchanges.get(0).getUrl());
+            assertEquals("gzip", exchanges.get(0).getHeaderValue("Content-Encoding"));
+
+            ReplayHttpClient replay = new ReplayHttpClient(capture, 100);
+            RecreationGovClient replaying = new RecreationGovClient(replay, 0, Duration.ofSeconds(1));
+            assertEquals(objectMapper.readTree(json), replaying.getPermitAvailability("233260"));
+            assertThrows(IOException.class, () -> replaying.getPermitAvailability("445859"));
+            assertEquals(1, replay.getServedCount());
+            assertEquals(1, replay.getMissCount());
+            // Bodies are stored compressed, as received
+            assertEquals(json.length(), replaying.getTransferStats("233260").getDecodedBytes());
+            assertEquals(entity.getContentLength(), replaying.getTransferStats("233260").getWireBytes());
+            replaying.close();
+        } finally {
+            Files.delete(capture);
+        }
+    }
+
+    @Test
+    void recordingHttpClient_KeepsRepeatedHeadersAndEnforcesBodyLimit() throws Exception {
+        SimpleCloseableHttpResponse response = new SimpleCloseableHttpResponse(
+            new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"), new StringEntity("{\"availability\": []}"));
+        response.addHeader("Set-Cookie", "a=1");
+        response.addHeader("Set-Cookie", "b=2");
+        Path capture = Files.createTempFile("recreation-gov", ".capture");
+        try {
+            RecordingHttpClient recorder = new RecordingHttpClient(new TestHttpClient(response,
+                new SimpleCloseableHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                    new StringEntity("{\"availability\": []}"))), capture);
+            RecreationGovClient recording = new RecreationGovClient(recorder, 0, Duration.ofSeconds(1));
+            recording.getPermitAvailability("233260");
+            recording.setMaxBodyBytes(8);
+            assertThrows(IOException.class, () -> recording.getPermitAvailability("445859"));
+            recording.close();
+
+            // The oversized body is refused while recording and never reaches the capture
+            List<HttpCapture.Exchange> exchanges = HttpCapture.read(capture);
+            assertEquals(1, exchanges.size());
+            assertEquals(1, recorder.getRecordedCount());
+            assertEquals(Arrays.asList("a=1", "b=2"), exchanges.get(0).getHeaders().stream()
+                .filter(h -> h.getName().equals("Set-Cookie")).map(Header::getValue).collect(Collectors.toList()));
+            assertEquals(2, exchanges.get(0).toResponse().getHeaders("Set-Cookie").length);
+        } finally {
+            Files.delete(capture);
+        }
+    }
+
+    @Test
+    void replayHttpClient_ServesLatestResponseOnAcceleratedClock() throws Exception {
+        String url = "https://www.recreation.gov/api/permits/233260/availability";
+        long recordedAt = 1_700_000_000_000L;
+        List<HttpCapture.Exchange> exchanges = Arrays.asList(
+            new HttpCapture.Exchange(recordedAt, 0, url, 200, "OK", List.of(),
+                "{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 1}]}".getBytes(StandardCharsets.UTF_8)),
+            new HttpCapture.Exchange(recordedAt + 60_000, 0, url, 200, "OK", List.of(),
+                "{\"availability\": [{\"date\": \"2024-08-01\", \"remaining\": 5}]}".getBytes(StandardCharsets.UTF_8)));
+        // One real millisecond plays back one recorded minute
+        ReplayHttpClient replay = new ReplayHttpClient(exchanges, 60_000);
+        RecreationGovClient client = new RecreationGovClient(replay, 0, Duration.ofSeconds(1));
+
+        assertEquals(1, client.getPermitAvailability("233260").get("availability").get(0).get("remaining").asInt());
+        Thread.sleep(5);
+        assertEquals(5, client.getPermitAvailability("233260").get("availability").get(0).get("remaining").asInt());
+        assertTrue(replay.isFinished());
+        client.close();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gzipWithFileName(String text) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Header with the FNAME flag set, followed by a NUL-terminated file name
+        bytes.write(new byte[] {0x1f, (byte) 0x8b, 8, 8, 0, 0, 0, 0, 0, (byte) 0xff});
+        bytes.write("availability.json\0".getBytes(StandardCharsets.ISO_8859_1));
+        bytes.write(deflate(text, true));
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        for (long value : new long[] {crc.getValue(), data.length}) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                bytes.write((int) (value >>> shift) & 0xff);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(String text, boolean raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
     private static <T extends Throwable> T findCause(Throwable throwable, Class<T> type) {
         Throwable current = throwable;
         while (current != null) {
@@ -0,0 +1,189 @@
+package com.rei.permit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardCoordinatorTest {
+    private static final int PERMITS = 100;
+
+    @Test
+    void consistentHashRing_OnlyMovesKeysOfRemovedNode() {
+        ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing two = new ConsistentHashRing(Arrays.asList("a", "b"));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = String.valueOf(200000 + i);
+            String before = three.nodeFor(key);
+            counts.merge(before, 1, Integer::sum);
+            if (!"c".equals(before)) {
+                assertEquals(before, two.nodeFor(key));
+            }
+        }
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 150, "unbalanced ring: " + counts));
+    }
+
+    @Test
+    void coordinators_SplitCatalogAndRebalanceWhenNodeDies(@TempDir Path dir) throws Exception {
+        ShardCoordinator first = new ShardCoordinator(dir, "node-1", Duration.ofSeconds(30));
+        ShardCoordinator second = new ShardCoordinator(dir, "node-2", Duration.ofSeconds(30));
+        first.start();
+        second.start();
+        first.refresh();
+        second.refresh();
+
+        int firstOwned = 0;
+        for (int i = 0; i < 100; i++) {
+            String permitId = String.valueOf(400000 + i);
+            // Every permit has exactly one owner
+            assertNotEquals(first.owns(permitId), second.owns(permitId));
+            if (first.owns(permitId)) {
+                firstOwned++;
+            }
+        }
+        assertTrue(firstOwned > 0 && firstOwned < 100);
+
+        // node-2 stops renewing its lease and it expires
+        Files.setLastModifiedTime(dir.resolve("node-2.lease"), FileTime.from(Instant.now().minusSeconds(60)));
+        first.refresh();
+        assertEquals(1, first.getMembers().size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(first.owns(String.valueOf(400000 + i)));
+        }
+
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    void fileNotificationStore_NotifiesExactlyOnceAcrossNodes(@TempDir Path dir) throws Exception {
+        NotificationStore first = new FileNotificationStore(dir);
+        NotificationStore second = new FileNotificationStore(dir);
+
+        assertTrue(first.markNotified("233260_2024-08-01"));
+        assertFalse(second.markNotified("233260_2024-08-01"));
+
+        assertTrue(second.clear("233260_2024-08-01"));
+        assertTrue(second.markNotified("233260_2024-08-01"));
+
+        first.expire(Duration.ZERO.minusSeconds(1));
+        assertTrue(first.markNotified("233260_2024-08-01"));
+    }
+
+    @Test
+    void coordinators_SplitCatalogAcrossProcesses(@TempDir Path dir) throws Exception {
+        ShardCoordinator first = new ShardCoordinator(dir.resolve("members"), "node-1", Duration.ofSeconds(30));
+        first.start();
+        // The second node runs in its own JVM, sharing only the directory, as in production
+        Process second = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            ShardCoordinatorTest.class.getName(), dir.toString(), "node-2")
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        try {
+            List<String> firstResult = runNode(first, dir);
+            Map<String, String> secondResult = new HashMap<>();
+            try (BufferedReader out = new BufferedReader(
+                new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while (secondResult.size() < 2 && (line = out.readLine()) != null) {
+                    if (line.startsWith("owned ") || line.startsWith("won ")) {
+                        secondResult.put(line.substring(0, line.indexOf(' ')), line.substring(line.indexOf(' ') + 1));
+                    }
+                }
+                // Let the second node leave
+                second.getOutputStream().close();
+                assertTrue(second.waitFor(10, TimeUnit.SECONDS));
+            }
+            assertEquals(0, second.exitValue());
+
+            // Each permit is owned by exactly one process, and each key is won by exactly one
+            assertPartition(firstResult.get(0), secondResult.get("owned"));
+            assertPartition(firstResult.get(1), secondResult.get("won"));
+        } finally {
+            second.destroyForcibly();
+            first.stop();
+        }
+    }
+
+    private static void assertPartition(String first, String second) {
+        Set<String> all = new HashSet<>();
+        int count = 0;
+        for (String ids : Arrays.asList(first, second)) {
+            for (String id : ids.split(",")) {
+                if (!id.isEmpty()) {
+                    all.add(id);
+                    count++;
+                }
+            }
+        }
+        assertEquals(PERMITS, count);
+        assertEquals(PERMITS, all.size());
+    }
+
+    /**
+     * Waits until both nodes see each other, then reports the permits this node owns and
+     * the notification keys it won while the other node raced for all of them.
+     */
+    private static List<String> runNode(ShardCoordinator node, Path dir) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (node.getMembers().size() < 2) {
+            assertTrue(System.nanoTime() < deadline, "nodes never saw each other");
+            Thread.sleep(20);
+            node.refresh();
+        }
+        NotificationStore store = new FileNotificationStore(dir.resolve("notified"));
+        List<String> owned = new ArrayList<>();
+        List<String> won = new ArrayList<>();
+        for (int i = 0; i < PERMITS; i++) {
+            String permitId = String.valueOf(400000 + i);
+            if (node.owns(permitId)) {
+                owned.add(permitId);
+            }
+            if (store.markNotified(permitId + "_2024-08-01")) {
+                won.add(permitId);
+            }
+        }
+        return Arrays.asList(String.join(",", owned), String.join(",", won));
+    }
+
+    /**
+     * Entry point of the node forked by {@link #coordinators_SplitCatalogAcrossProcesses(Path)}.
+     * Prints its results and stays in the cluster until its standard input is closed.
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args[0]);
+        ShardCoordinator node = new ShardCoordinator(dir.resolve("members"), args[1], Duration.ofSeconds(30));
+        node.start();
+        List<String> result = runNode(node, dir);
+        System.out.println("owned " + result.get(0));
+        System.out.println("won " + result.get(1));
+        System.out.flush();
+        while (System.in.read() >= 0) {
+            // Wait for the test to finish with this node
+        }
+        node.stop();
+    }
+}
@@ -1,6 +1,17 @@
 package com.rei.permit;
 
+import com.twilio.exception.ApiException;
 import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SmsNotificationServiceTest {
@@ -10,13 +21,119 @@ public class SmsNotificationServiceTest {
         System.setProperty("sms.test.mode", "true");
         
         // Initialize the service
-        SmsNotificationService.initialize();
+        SmsNotificationService notificationService = new SmsNotificationService();
+        notificationService.initialize();
         
         // Send a test message
-        boolean success = SmsNotificationService.sendTestMessage();
+        boolean success = notificationService.sendTestMessage();
         
         // Assert that the message was sent successfully
         assertTrue(success, "SMS test message should be sent successfully");
-        assertNotNull(SmsNotificationService.getLastMessageBodyForTesting());
+        assertNotNull(notificationService.getLastMessageBodyForTesting());
+    }
+
+    @Test
+    void testMode_QueuesAlertsOnSendScheduler() {
+        System.setProperty("sms.test.mode", "true");
+        SmsNotificationService notificationService = new SmsNotificationService();
+        notificationService.initialize();
+        Permit permit = new Permit("233260", "Enchantments", "https://www.recreation.gov/permits/233260", "2024-08-01");
+        AlertTrace trace = new AlertTracer(1, Duration.ofSeconds(30)).start(permit.getId());
+        trace.mark(AlertTrace.Stage.FETCH_START);
+
+        notificationService.notifyPermitAvailable(permit, new PermitAvailability(true, "2024-08-01", 2),
+            "Enchantments is available", trace);
+
+        // Delivery happens on the sender thread, exactly as with Twilio
+        assertTrue(notificationService.shutdown(Duration.ofSeconds(5)));
+        assertEquals("Enchantments is available", notificationService.getLastMessageBodyForTesting());
+        assertEquals("TEST", trace.getMessageSid());
+        assertTrue(trace.getStageNanos(AlertTrace.Stage.ENQUEUED) >= 0);
+        assertTrue(trace.getStageNanos(AlertTrace.Stage.DELIVERED) >= 0);
+    }
+
+    @Test
+    void sendScheduler_SendsMostUrgentAlertFirst() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        SmsSendScheduler scheduler = new SmsSendScheduler("+15550100", 1000, 1,
+            Duration.ofMillis(10), Duration.ofMillis(10), body -> {
+                firstStarted.countDown();
+                release.await();
+                sent.add(body);
+                return "SM" + sent.size();
+            });
+        LocalDate today = LocalDate.of(2024, 7, 1);
+
+        scheduler.enqueue("blocker", SmsSendScheduler.LOWEST_PRIORITY);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        scheduler.enqueue("next month", SmsSendScheduler.priorityOf(new PermitAvailability(true, "2024-08-01", 1), today));
+        scheduler.enqueue("tomorrow, plenty", SmsSendScheduler.priorityOf(new PermitAvailability(true, "2024-07-02", 8), today));
+        scheduler.enqueue("tomorrow, last one", SmsSendScheduler.priorityOf(new PermitAvailability(true, "2024-07-02", 1), today));
+        release.countDown();
+
+        assertTrue(scheduler.stop(Duration.ofSeconds(5)));
+        assertEquals(List.of("blocker", "tomorrow, last one", "tomorrow, plenty", "next month"), sent);
+    }
+
+    @Test
+    void sendScheduler_EnforcesSendRate() {
+        SmsSendScheduler scheduler = new SmsSendScheduler("+15550100", 20, 1,
+            Duration.ofMillis(10), Duration.ofMillis(10), body -> "SM1");
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            scheduler.enqueue("message " + i, SmsSendScheduler.LOWEST_PRIORITY);
+        }
+
+        assertTrue(scheduler.stop(Duration.ofSeconds(5)));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(5, scheduler.getSentCount());
+        assertTrue(elapsedMs >= 190, "5 messages at 20/s should take at least 200 ms, took " + elapsedMs);
+    }
+
+    @Test
+    void sendScheduler_BacksOffOnTooManyRequests() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SmsSendScheduler scheduler = new SmsSendScheduler("+15550100", 1000, 3,
+            Duration.ofMillis(20), Duration.ofMillis(100), body -> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new ApiException("Too Many Requests", 20429, null, 429, null);
+                }
+                return "SM1";
+            });
+
+        scheduler.enqueue("alert", 0);
+        waitFor(() -> scheduler.getSentCount() == 1);
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, scheduler.getThrottledCount());
+        assertTrue(scheduler.getQueueDelays().percentile(100) >= 20);
+        scheduler.stop(Duration.ZERO);
+    }
+
+    @Test
+    void sendScheduler_DoesNotRetryRejectedMessage() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SmsSendScheduler scheduler = new SmsSendScheduler("+15550100", 1000, 3,
+            Duration.ofMillis(10), Duration.ofMillis(10), body -> {
+                attempts.incrementAndGet();
+                throw new ApiException("Invalid 'To' Phone Number", 21211, null, 400, null);
+            });
+
+        scheduler.enqueue("alert", 0);
+        waitFor(() -> scheduler.getFailedCount() == 1);
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, scheduler.getPendingCount());
+        scheduler.stop(Duration.ZERO);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
     }
-} 
\ No newline at end of file
+}